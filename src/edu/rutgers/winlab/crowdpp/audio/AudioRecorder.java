@@ -30,7 +30,8 @@ import android.media.AudioFormat;
 import android.media.AudioRecord;
 import android.media.MediaRecorder;
 import android.media.MediaRecorder.AudioSource;
-import android.util.Log;
+
+import edu.rutgers.winlab.crowdpp.util.Log;
 
 /**
  * WAV audio recording
@@ -75,6 +76,18 @@ public class AudioRecorder {
 	 */
 	public enum State {INITIALIZING, READY, RECORDING, ERROR, STOPPED};
 	
+	/**
+	 * Interface for receiving the recorded PCM buffers as they are read (only in uncompressed mode).
+	 * The buffer is reused by the recorder, copy it if it is needed after the call.
+	 */
+	public interface OnBufferReadyListener {
+		/** called when the recording starts, samples are 16bit, mono, little endian */
+		public void onStart(int sampleRate);
+		
+		/** called with every buffer read from the AudioRecord */
+		public void onBufferReady(byte[] buffer, int length);
+	}
+	
 	public static final boolean RECORDING_UNCOMPRESSED = true;
 	public static final boolean RECORDING_COMPRESSED = false;
 	
@@ -102,7 +115,10 @@ public class AudioRecorder {
 	
 	// File writer (only in uncompressed mode)
 	private RandomAccessFile randomAccessWriter;
-		       
+	
+	// Receiver of the recorded buffers (only in uncompressed mode); no file is written if the output file is null
+	private OnBufferReadyListener bufferListener = null;
+	
 	// Number of channels, sample rate, sample size(size in bits), buffer size, audio source, sample size(see AudioFormat)
 	private short                    nChannels;
 	private int                      sRate;
@@ -133,10 +149,15 @@ public class AudioRecorder {
 	/** Method used for recording. */
 	private AudioRecord.OnRecordPositionUpdateListener updateListener = new AudioRecord.OnRecordPositionUpdateListener() {
 		public void onPeriodicNotification(AudioRecord recorder) {
-			audioRecorder.read(buffer, 0, buffer.length); // Fill buffer
+			int read = audioRecorder.read(buffer, 0, buffer.length); // Fill buffer
 			try { 
-				randomAccessWriter.write(buffer); // Write buffer to file
-				payloadSize += buffer.length;
+				if (randomAccessWriter != null) {
+					randomAccessWriter.write(buffer); // Write buffer to file
+					payloadSize += buffer.length;
+				}
+				if (bufferListener != null && read > 0) {
+					bufferListener.onBufferReady(buffer, read); // Hand buffer to the listener
+				}
 				if (bSamples == 16) {
 					for (int i = 0; i < buffer.length/2; i++) { 
 						// 16bit sample size
@@ -259,6 +280,25 @@ public class AudioRecorder {
 		}
 	}
 	
+	/**
+	 * Sets the listener receiving the recorded buffers, call directly after construction/reset.
+	 * Only supported for uncompressed 16bit recording.
+	 * @param listener the buffer listener, or null
+	 */
+	public void setBufferListener(OnBufferReadyListener listener) {
+		if (state == State.INITIALIZING && rUncompressed && bSamples == 16) {
+			bufferListener = listener;
+		}
+		else {
+			Log.e(AudioRecorder.class.getName(), "setBufferListener() called on illegal state");
+		}
+	}
+	
+	/** @return the sample rate of the recording */
+	public int getSampleRate() {
+		return sRate;
+	}
+	
 	/**
 	 * Returns the largest amplitude sampled since the last call to this method.
 	 * @return returns the largest amplitude since the last call, or 0 when not in recording state. 
@@ -293,24 +333,26 @@ public class AudioRecorder {
 		try {
 			if (state == State.INITIALIZING) {
 				if (rUncompressed) {
-					if ((audioRecorder.getState() == AudioRecord.STATE_INITIALIZED) & (filePath != null)) {
-						// write file header
-						randomAccessWriter = new RandomAccessFile(filePath, "rw");
-						Log.i(AudioRecorder.class.getName(), filePath);						
-						randomAccessWriter.setLength(0); // Set file length to 0, to prevent unexpected behavior in case the file already existed
-						randomAccessWriter.writeBytes("RIFF");
-						randomAccessWriter.writeInt(0); // Final file size not known yet, write 0 
-						randomAccessWriter.writeBytes("WAVE");
-						randomAccessWriter.writeBytes("fmt ");
-						randomAccessWriter.writeInt(Integer.reverseBytes(16)); // Sub-chunk size, 16 for PCM
-						randomAccessWriter.writeShort(Short.reverseBytes((short) 1)); // AudioFormat, 1 for PCM
-						randomAccessWriter.writeShort(Short.reverseBytes(nChannels));// Number of channels, 1 for mono, 2 for stereo
-						randomAccessWriter.writeInt(Integer.reverseBytes(sRate)); // Sample rate
-						randomAccessWriter.writeInt(Integer.reverseBytes(sRate*bSamples*nChannels/8)); // Byte rate, SampleRate*NumberOfChannels*BitsPerSample/8
-						randomAccessWriter.writeShort(Short.reverseBytes((short)(nChannels*bSamples/8))); // Block align, NumberOfChannels*BitsPerSample/8
-						randomAccessWriter.writeShort(Short.reverseBytes(bSamples)); // Bits per sample
-						randomAccessWriter.writeBytes("data");
-						randomAccessWriter.writeInt(0); // Data chunk size not known yet, write 0
+					if ((audioRecorder.getState() == AudioRecord.STATE_INITIALIZED) & (filePath != null || bufferListener != null)) {
+						if (filePath != null) {
+							// write file header
+							randomAccessWriter = new RandomAccessFile(filePath, "rw");
+							Log.i(AudioRecorder.class.getName(), filePath);						
+							randomAccessWriter.setLength(0); // Set file length to 0, to prevent unexpected behavior in case the file already existed
+							randomAccessWriter.writeBytes("RIFF");
+							randomAccessWriter.writeInt(0); // Final file size not known yet, write 0 
+							randomAccessWriter.writeBytes("WAVE");
+							randomAccessWriter.writeBytes("fmt ");
+							randomAccessWriter.writeInt(Integer.reverseBytes(16)); // Sub-chunk size, 16 for PCM
+							randomAccessWriter.writeShort(Short.reverseBytes((short) 1)); // AudioFormat, 1 for PCM
+							randomAccessWriter.writeShort(Short.reverseBytes(nChannels));// Number of channels, 1 for mono, 2 for stereo
+							randomAccessWriter.writeInt(Integer.reverseBytes(sRate)); // Sample rate
+							randomAccessWriter.writeInt(Integer.reverseBytes(sRate*bSamples*nChannels/8)); // Byte rate, SampleRate*NumberOfChannels*BitsPerSample/8
+							randomAccessWriter.writeShort(Short.reverseBytes((short)(nChannels*bSamples/8))); // Block align, NumberOfChannels*BitsPerSample/8
+							randomAccessWriter.writeShort(Short.reverseBytes(bSamples)); // Bits per sample
+							randomAccessWriter.writeBytes("data");
+							randomAccessWriter.writeInt(0); // Data chunk size not known yet, write 0
+						}
 						
 						buffer = new byte[framePeriod*bSamples/8*nChannels];
 						state = State.READY;
@@ -347,7 +389,7 @@ public class AudioRecorder {
 			stop();
 		}
 		else {
-			if ((state == State.READY) & (rUncompressed)) {
+			if ((state == State.READY) & (rUncompressed) & (randomAccessWriter != null)) {
 				try {
 					randomAccessWriter.close(); 	// Remove prepared file
 				} catch (IOException e) {
@@ -405,6 +447,9 @@ public class AudioRecorder {
 		if (state == State.READY) {
 			if (rUncompressed) {
 				payloadSize = 0;
+				if (bufferListener != null) {
+					bufferListener.onStart(sRate);
+				}
 				audioRecorder.startRecording();
 				audioRecorder.read(buffer, 0, buffer.length);
 			}
@@ -428,18 +473,20 @@ public class AudioRecorder {
 		if (state == State.RECORDING) {
 			if (rUncompressed) {
 				audioRecorder.stop();
-				try {
-					randomAccessWriter.seek(4); // Write size to RIFF header
-					randomAccessWriter.writeInt(Integer.reverseBytes(36+payloadSize));
+				if (randomAccessWriter != null) {
+					try {
+						randomAccessWriter.seek(4); // Write size to RIFF header
+						randomAccessWriter.writeInt(Integer.reverseBytes(36+payloadSize));
 				
-					randomAccessWriter.seek(40); // Write size to Subchunk2Size field
-					randomAccessWriter.writeInt(Integer.reverseBytes(payloadSize));
+						randomAccessWriter.seek(40); // Write size to Subchunk2Size field
+						randomAccessWriter.writeInt(Integer.reverseBytes(payloadSize));
 				
-					randomAccessWriter.close();
-				}
-				catch(IOException e) {
-					Log.e(AudioRecorder.class.getName(), "I/O exception occured while closing output file");
-					state = State.ERROR;
+						randomAccessWriter.close();
+					}
+					catch(IOException e) {
+						Log.e(AudioRecorder.class.getName(), "I/O exception occured while closing output file");
+						state = State.ERROR;
+					}
 				}
 			}
 			else {
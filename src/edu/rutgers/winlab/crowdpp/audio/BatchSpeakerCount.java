@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import edu.rutgers.winlab.crowdpp.util.Constants;
+import edu.rutgers.winlab.crowdpp.util.FeatureFile;
+import edu.rutgers.winlab.crowdpp.util.FeatureFileReader;
+import edu.rutgers.winlab.crowdpp.util.FeatureFileWriter;
+import edu.rutgers.winlab.crowdpp.util.Log;
+
+/**
+ * The BatchSpeakerCount class
+ * Headless speaker counting over archived recordings on a plain JVM: the wav files are
+ * processed by a pool of workers and every result is appended to one tab separated table
+ * as soon as it is known. Files already in the table are skipped, so an interrupted run
+ * is resumed by starting it again with the same table.
+ */
+public class BatchSpeakerCount {
+
+	public static final String HEADER = "file\tseconds\tcount\tspeech\textract_ms\tcount_ms\tstatus";
+
+	private static final int COLUMNS = 7;
+
+	private final File table;
+	private final int threads;
+	private final boolean featureFiles;
+
+	/** the owner's calibration features, null for unsupervised counting */
+	private double[][] calMfcc, calPitch;
+
+	private PrintWriter out;
+	private int done, total;
+
+	/**
+	 * @param table the results table, created or appended to
+	 * @param threads the number of workers
+	 * @param featureFiles reuse the feature files next to the wav files and keep the new ones
+	 */
+	public BatchSpeakerCount(File table, int threads, boolean featureFiles) {
+		this.table = table;
+		this.threads = threads;
+		this.featureFiles = featureFiles;
+	}
+
+	/** count semisupervised against the features of the owner's calibration recording */
+	public void setCalibration(String wavFile) throws Exception {
+		double[][][] features = getFeatures(wavFile);
+		if (features[0].length == 0) {
+			throw new IOException("No features in " + wavFile);
+		}
+		calMfcc = features[0];
+		calPitch = features[1];
+	}
+
+	/** process the wav files that are not in the table yet */
+	public void run(List<String> wavFiles) throws IOException, InterruptedException {
+		Set<String> finished = readTable(table);
+		List<String> todo = new ArrayList<String>();
+		for (String wav : wavFiles) {
+			String path = new File(wav).getAbsolutePath();
+			if (!finished.contains(path)) {
+				todo.add(path);
+			}
+		}
+		System.out.println(wavFiles.size() + " files, " + (wavFiles.size() - todo.size()) + " already in " + table + ", "
+				+ todo.size() + " to do with " + threads + " workers");
+		if (todo.isEmpty()) {
+			return;
+		}
+
+		openTable();
+		done = 0;
+		total = todo.size();
+		long start = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (final String wav : todo) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						append(process(wav));
+					}
+				});
+			}
+			executor.shutdown();
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES));
+		} finally {
+			executor.shutdownNow();
+			out.close();
+		}
+		System.out.println(String.format(Locale.US, "%d files in %.1f s", total, (System.currentTimeMillis() - start) / 1000.0));
+	}
+
+	/** @return the row of the wav file */
+	private String process(String wav) {
+		long t0 = System.nanoTime();
+		double seconds = 0;
+		try {
+			double[][][] features = getFeatures(wav);
+			double[][] mfcc = features[0];
+			double[][] pitch = features[1];
+			seconds = pitch.length / FeatureFile.DEFAULT_FRAME_RATE;
+			long t1 = System.nanoTime();
+
+			String count, speech;
+			if (calMfcc == null) {
+				count = Integer.toString(SpeakerCount.unsupervised(mfcc, pitch));
+				speech = "-";
+			}
+			else {
+				double[] result = SpeakerCount.semisupervised(mfcc, pitch, calMfcc, calPitch);
+				count = Integer.toString((int) result[0]);
+				speech = String.format(Locale.US, "%.4f", result[1]);
+			}
+			long t2 = System.nanoTime();
+			return row(wav, seconds, count, speech, (t1 - t0) / 1000000, (t2 - t1) / 1000000, "ok");
+		}
+		catch (Throwable e) {
+			long t = (System.nanoTime() - t0) / 1000000;
+			String status = ("error: " + e).replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+			return row(wav, seconds, "-1", "-", t, 0, status);
+		}
+	}
+
+	private static String row(String wav, double seconds, String count, String speech, long extractMs, long countMs, String status) {
+		return String.format(Locale.US, "%s\t%.2f\t%s\t%s\t%d\t%d\t%s", wav, seconds, count, speech, extractMs, countMs, status);
+	}
+
+	/** @return {mfcc, pitch} of the wav file, from its feature file if there is one */
+	private double[][][] getFeatures(String wav) throws Exception {
+		if (featureFiles) {
+			FeatureFileReader reader = FeatureFile.open(wav);
+			if (reader != null) {
+				return new double[][][] {reader.getMfcc(), reader.getPitch()};
+			}
+		}
+		FeatureExtractor extractor = FeatureExtractor.extract(wav);
+		double[][] mfcc = extractor.getMfcc();
+		double[][] pitch = extractor.getPitch();
+		if (featureFiles) {
+			FeatureFileWriter.write(FeatureFile.getPath(wav), FeatureFile.DEFAULT_FRAME_RATE, mfcc, pitch);
+		}
+		return new double[][][] {mfcc, pitch};
+	}
+
+	/** write the row and flush it, so an interruption loses at most the rows being written */
+	private synchronized void append(String row) {
+		out.println(row);
+		out.flush();
+		done++;
+		int tab = row.indexOf('\t');
+		String[] col = row.substring(tab + 1).split("\t");
+		System.out.println(String.format(Locale.US, "[%d/%d] %s  %ss  count %s  extract %s ms  count %s ms%s", done, total,
+				new File(row.substring(0, tab)).getName(), col[0], col[1], col[3], col[4], col[5].equals("ok") ? "" : "  " + col[5]));
+	}
+
+	private void openTable() throws IOException {
+		boolean empty = !table.exists() || table.length() == 0;
+		boolean partial = false;
+		if (!empty) {
+			// a run killed while writing leaves a partial line, which readTable ignores
+			RandomAccessFile raf = new RandomAccessFile(table, "r");
+			try {
+				raf.seek(raf.length() - 1);
+				partial = raf.read() != '\n';
+			} finally {
+				raf.close();
+			}
+		}
+		out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(table, true), "UTF-8"));
+		if (empty) {
+			out.println(HEADER);
+		}
+		else if (partial) {
+			out.println();
+		}
+		out.flush();
+	}
+
+	/** @return the files with a complete row in the table */
+	public static Set<String> readTable(File table) throws IOException {
+		Set<String> files = new HashSet<String>();
+		if (!table.exists()) {
+			return files;
+		}
+		BufferedReader br = new BufferedReader(new FileReader(table));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] col = line.split("\t");
+				if (col.length == COLUMNS && !line.equals(HEADER)) {
+					files.add(col[0]);
+				}
+			}
+		} finally {
+			br.close();
+		}
+		return files;
+	}
+
+	/** @return the wav files under the directory, the files listed in the text file, or the wav file itself */
+	public static List<String> collect(File path) throws IOException {
+		List<String> files = new ArrayList<String>();
+		if (path.isDirectory()) {
+			File[] children = path.listFiles();
+			Arrays.sort(children);
+			for (File child : children) {
+				if (child.isDirectory()) {
+					files.addAll(collect(child));
+				}
+				else if (child.getName().toLowerCase(Locale.US).endsWith(".wav")) {
+					files.add(child.getPath());
+				}
+			}
+		}
+		else if (path.getName().toLowerCase(Locale.US).endsWith(".wav")) {
+			files.add(path.getPath());
+		}
+		else {
+			BufferedReader br = new BufferedReader(new FileReader(path));
+			try {
+				String line;
+				while ((line = br.readLine()) != null) {
+					line = line.trim();
+					if (line.length() > 0 && !line.startsWith("#")) {
+						File f = new File(line);
+						files.add(f.isAbsolute() ? line : new File(path.getAbsoluteFile().getParentFile(), line).getPath());
+					}
+				}
+			} finally {
+				br.close();
+			}
+		}
+		return files;
+	}
+
+	private static double[] parsePair(String s) {
+		String[] v = s.split(",");
+		if (v.length != 2) {
+			throw new IllegalArgumentException("Expected same,diff instead of " + s);
+		}
+		return new double[] {Double.parseDouble(v[0]), Double.parseDouble(v[1])};
+	}
+
+	private static void usage() {
+		System.err.println("usage: BatchSpeakerCount [options] dir|list-file|wav-file ...\n"
+				+ "  -o table      results table, appended to and used to resume (default speaker_count.tsv)\n"
+				+ "  -j threads    number of workers (default: number of processors)\n"
+				+ "  -c wav-file   owner's calibration recording, counts semisupervised\n"
+				+ "  -u same,diff  unsupervised MFCC distance thresholds (default 15.6,21.6)\n"
+				+ "  -s same,diff  semisupervised MFCC distance thresholds (default 15.6,21.6)\n"
+				+ "  -f            reuse the feature files next to the wav files and keep the new ones\n"
+				+ "  -v            print the counting log\n"
+				+ "Directories are searched recursively for .wav files, a list file has one wav file per line.");
+		System.exit(1);
+	}
+
+	public static void main(String[] args) throws Exception {
+		File table = new File("speaker_count.tsv");
+		int threads = Runtime.getRuntime().availableProcessors();
+		String cal = null;
+		boolean featureFiles = false;
+		double[] un = {15.6, 21.6};
+		double[] semi = {15.6, 21.6};
+		List<String> wavFiles = new ArrayList<String>();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-o")) {
+					table = new File(args[++i]);
+				}
+				else if (args[i].equals("-j")) {
+					threads = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("-c")) {
+					cal = args[++i];
+				}
+				else if (args[i].equals("-u")) {
+					un = parsePair(args[++i]);
+				}
+				else if (args[i].equals("-s")) {
+					semi = parsePair(args[++i]);
+				}
+				else if (args[i].equals("-f")) {
+					featureFiles = true;
+				}
+				else if (args[i].equals("-v")) {
+					Log.verbose = true;
+				}
+				else if (args[i].startsWith("-")) {
+					usage();
+				}
+				else {
+					wavFiles.addAll(collect(new File(args[i])));
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			usage();
+		}
+		if (wavFiles.isEmpty() || threads < 1) {
+			usage();
+		}
+
+		Constants.mfcc_dist_same_un = un[0];
+		Constants.mfcc_dist_diff_un = un[1];
+		Constants.mfcc_dist_same_semi = semi[0];
+		Constants.mfcc_dist_diff_semi = semi[1];
+
+		BatchSpeakerCount batch = new BatchSpeakerCount(table, threads, featureFiles);
+		if (cal != null) {
+			batch.setCalibration(cal);
+		}
+		batch.run(wavFiles);
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fau.cs.jstk.stat.Density;
+import edu.rutgers.winlab.crowdpp.util.Constants;
+
+/**
+ * The BicSegmenter class
+ * Variable length segmentation at the speaker changes instead of every seg_duration_sec seconds.
+ * A window starting at the last change grows until the Bayesian information criterion prefers two
+ * diagonal Gaussians, split at some frame of the window, over a single one (Chen and Gopalakrishnan).
+ * The Gaussians are the maximum likelihood estimates of Trainer.ml1, taken from the cumulative sums
+ * of a FeatureIndex, so every candidate change costs O(d) instead of a pass over its frames.
+ * The segments between the changes are filtered by their pitch like the fixed length segments.
+ */
+public class BicSegmenter {
+
+	/** the candidate changes are tested every STEP frames, the window grows by GROWTH frames */
+	private static final int STEP = 5;
+	private static final int GROWTH = 62;
+
+	private final FeatureIndex index;
+	private final int dim;
+	private final double lambda;
+	private final int minFrames, windowFrames, maxWindowFrames;
+
+	/** the first frame of every segment */
+	private final List<Integer> changes = new ArrayList<Integer>();
+	private final List<SpeakerCluster> segments = new ArrayList<SpeakerCluster>();
+	private int evaluations = 0;
+
+	private final double[] m2;
+	/** (t - start) * logDet(start, t) of the candidates t of the window, kept while the window only grows */
+	private final double[] left;
+	private int leftCount = 0;
+
+	/** segment the first Constants.mfcc_dim MFCC columns with the Constants.seg_bic_* parameters */
+	public BicSegmenter(double[][] mfcc, double[][] pitch) {
+		this(mfcc, pitch, Constants.mfcc_dim, Constants.seg_bic_lambda, 
+				Constants.seg_bic_min_sec, Constants.seg_bic_window_sec, Constants.seg_bic_window_max_sec);
+	}
+
+	/**
+	 * @param lambda the weight of the model complexity penalty
+	 * @param minSeconds the shortest segment
+	 * @param windowSeconds the initial window after every change
+	 * @param maxWindowSeconds the longest window, it slides on without a change
+	 */
+	public BicSegmenter(double[][] mfcc, double[][] pitch, int dim, double lambda, 
+			double minSeconds, double windowSeconds, double maxWindowSeconds) {
+		this.index = new FeatureIndex(mfcc, pitch, dim, Constants.pitch_mu_lower, Constants.pitch_mu_upper);
+		this.dim = dim;
+		this.lambda = lambda;
+		this.minFrames = Math.max(1, (int) Math.round(minSeconds / FeatureIndex.FRAME_SHIFT));
+		this.windowFrames = Math.max(2 * minFrames, (int) Math.round(windowSeconds / FeatureIndex.FRAME_SHIFT));
+		this.maxWindowFrames = Math.max(windowFrames, (int) Math.round(maxWindowSeconds / FeatureIndex.FRAME_SHIFT));
+		this.m2 = new double[dim];
+		this.left = new double[maxWindowFrames / STEP + 1];
+		detect();
+		filter();
+	}
+
+	/** find the changes with a growing (and at most maxWindowFrames long, then sliding) window */
+	private void detect() {
+		int frames = index.getFrameCount();
+		if (frames == 0) {
+			return;
+		}
+		changes.add(0);
+		int start = 0;
+		int end = Math.min(frames, windowFrames);
+		while (end - start >= 2 * minFrames) {
+			double full = (end - start) * logDet(start, end);
+			double penalty = lambda * 0.5 * (2 * dim) * Math.log(end - start);
+			double best = 0;
+			int change = -1;
+			int k = 0;
+			for (int t = start + minFrames; t <= end - minFrames; t += STEP, k++) {
+				if (k == leftCount) {
+					left[leftCount++] = (t - start) * logDet(start, t);
+				}
+				double bic = 0.5 * (full - left[k] - (end - t) * logDet(t, end)) - penalty;
+				evaluations++;
+				if (bic > best) {
+					best = bic;
+					change = t;
+				}
+			}
+			if (change > 0) {
+				changes.add(change);
+				leftCount = 0;
+				start = change;
+				end = Math.min(frames, start + windowFrames);
+			}
+			else if (end == frames) {
+				break;
+			}
+			else {
+				end = Math.min(frames, end + GROWTH);
+				if (end - start > maxWindowFrames) {
+					leftCount = 0;
+					start = end - maxWindowFrames;
+				}
+			}
+		}
+	}
+
+	/** @return the log determinant of the diagonal covariance of the frames in [start, end), like DensityDiagonal.update */
+	private double logDet(int start, int end) {
+		index.getSumOfSquares(start, end, m2);
+		int n = end - start;
+		double logdet = 0;
+		for (int j = 0; j < dim; j++) {
+			logdet += Math.log(Math.max(m2[j] / n, Density.MIN_COV));
+		}
+		return logdet;
+	}
+
+	/** keep the voiced segments, with the pitch thresholds of SpeakerCount.segmentation */
+	private void filter() {
+		int frames = index.getFrameCount();
+		for (int i = 0; i < changes.size(); i++) {
+			int lower = changes.get(i);
+			int upper = i + 1 < changes.size() ? changes.get(i + 1) : frames;
+			double pitch_rate = index.getVoicedRate(lower, upper);
+			double pitch_mu = index.getPitchMean(lower, upper);
+			double pitch_sigma = index.getPitchSigma(lower, upper);
+			if (pitch_rate >= Constants.pitch_rate_lower 
+					&& pitch_mu >= Constants.pitch_mu_lower 
+					&& pitch_mu <= Constants.pitch_mu_upper 
+					&& pitch_sigma <= Constants.pitch_sigma_upper) {
+				segments.add(index.getCluster(lower, upper, pitch_mu));
+			}
+		}
+	}
+
+	/** @return the first frame of every segment, the first segment starts at frame 0 */
+	public List<Integer> getChanges() {
+		return changes;
+	}
+
+	/** @return the number of candidate changes scored */
+	public int getEvaluations() {
+		return evaluations;
+	}
+
+	/** @return the voiced segments, before the neighbor merging */
+	public List<SpeakerCluster> getSegments() {
+		return segments;
+	}
+
+	/** @return the voiced segments with the neighbors pre-clustered, null if there are none */
+	public List<SpeakerCluster> finish() {
+		if (segments.size() == 0) {
+			return null;
+		}
+		return NeighborMerger.merge(segments);
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * The BinaryDistanceSink class
+ * Writes the distances as little endian records of 16 bytes:
+ * float calibration duration, int segment length, double distance.
+ */
+public class BinaryDistanceSink implements DistanceSink {
+
+	public static final int RECORD_SIZE = 16;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final FileOutputStream fos;
+	private final FileChannel channel;
+	private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	/** @param filename the file, appended to like the legacy calibration */
+	public BinaryDistanceSink(String filename) throws IOException {
+		this.fos = new FileOutputStream(filename, true);
+		this.channel = fos.getChannel();
+	}
+
+	@Override
+	public void write(double calDuration, int segmentLength, double distance) throws IOException {
+		if (buf.remaining() < RECORD_SIZE) {
+			flush();
+		}
+		buf.putFloat((float) calDuration);
+		buf.putInt(segmentLength);
+		buf.putDouble(distance);
+	}
+
+	private void flush() throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+		buf.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			fos.close();
+		}
+	}
+
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.rutgers.winlab.crowdpp.util.Constants;
+import edu.rutgers.winlab.crowdpp.util.FileProcess;
+
+/**
+ * The CalibrationEngine class
+ * Computes the self and other speaker distances of the microphone cross calibration.
+ * Every speaker's MFCC file is read once into a FeatureIndex and the segment statistics of all
+ * the segment lengths are computed up front from it, then the distances are computed one speaker row at a time on all the
+ * cores and handed to the sinks in the order of the legacy loops.
+ */
+public class CalibrationEngine {
+
+	public static final int MAX_SEGMENT_LENGTH = 8;
+
+	/** the number of segments taken from the 80 seconds of every speaker, by segment length */
+	public static final int[] SEGMENT_NUMS = new int[] {80, 40, 25, 20, 16, 10, 10, 10};
+
+	public static final double[] CAL_DURATIONS = new double[] {30, 45, 60};
+
+	private final int threads;
+	private final String[] names;
+	private final FeatureIndex[] index;
+	/** [segment length - 1][speaker][segment] */
+	private final SpeakerCluster[][][] segments;
+
+	/** load the *jstk.mfcc.txt files of the directory, one per speaker */
+	public CalibrationEngine(String directory, int threads) throws IOException {
+		this.threads = threads;
+		File dir = new File(directory);
+		if (!dir.isDirectory()) {
+			throw new IOException("Directory not found: " + directory);
+		}
+		List<String> files = new ArrayList<String>();
+		for (String filename : dir.list()) {
+			if (filename.endsWith("jstk.mfcc.txt")) {
+				files.add(filename);
+			}
+		}
+		names = files.toArray(new String[files.size()]);
+		Arrays.sort(names);
+
+		index = new FeatureIndex[names.length];
+		segments = new SpeakerCluster[MAX_SEGMENT_LENGTH][names.length][];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int k = 0; k < names.length; k++) {
+			final int speaker = k;
+			final String path = new File(dir, names[k]).getPath();
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					index[speaker] = new FeatureIndex(FileProcess.readFile(path, Constants.mfcc_dim), new double[0][], Constants.mfcc_dim);
+					for (int l = 1; l <= MAX_SEGMENT_LENGTH; l++) {
+						segments[l-1][speaker] = getSegments(index[speaker], l);
+					}
+					return null;
+				}
+			});
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Future<Void> f : executor.invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			throw asIOException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/** @return the number of speakers */
+	public int getSpeakerCount() {
+		return names.length;
+	}
+
+	/** @return the MFCC file of the speaker */
+	public String getSpeakerFile(int speaker) {
+		return names[speaker];
+	}
+
+	/** @return the segments of the given length (in seconds) of the speaker */
+	public SpeakerCluster[] getSegments(int speaker, int length) {
+		return segments[length-1][speaker];
+	}
+
+	/**
+	 * Split the frames into segments of the given length (in seconds) like the speaker counting,
+	 * see FeatureIndex.getSegmentBounds. The statistics are computed here, so the clusters can be
+	 * read from several threads.
+	 */
+	public static SpeakerCluster[] getSegments(FeatureIndex index, int length) {
+		int[][] bounds = FeatureIndex.getSegmentBounds(index.getFrameCount(), length);
+		SpeakerCluster[] seg = new SpeakerCluster[bounds[0].length];
+		for (int i = 0; i < seg.length; i++) {
+			seg[i] = newCluster(index, bounds[0][i], bounds[1][i]);
+		}
+		return seg;
+	}
+
+	private static SpeakerCluster newCluster(FeatureIndex index, int from, int to) {
+		SpeakerCluster c = index.getCluster(from, to, 0);
+		c.getMean();
+		c.getStd();
+		return c;
+	}
+
+	/**
+	 * Distances between the first calDuration seconds of every speaker and the segments of every
+	 * speaker, for each calibration duration and segment length. The sinks are left open.
+	 */
+	public void asymmetric(double[] calDurations, DistanceSink self, DistanceSink other) throws IOException {
+		final int n = names.length;
+		for (final double calDuration : calDurations) {
+			int cal_end_id = (int) Math.round(calDuration / FeatureIndex.FRAME_SHIFT) - 1;
+			final SpeakerCluster[] cal = new SpeakerCluster[n];
+			for (int k = 0; k < n; k++) {
+				cal[k] = newCluster(index[k], 0, Math.min(cal_end_id, index[k].getFrameCount()));
+			}
+			for (int l = 1; l <= MAX_SEGMENT_LENGTH; l++) {
+				System.out.println("Segment length:\t" + l);
+				final SpeakerCluster[][] seg = segments[l-1];
+				final int num = SEGMENT_NUMS[l-1];
+				run(new Row() {
+					@Override
+					public double[][] compute(int a) {
+						DoubleList s = new DoubleList(), o = new DoubleList();
+						for (int c = 0; c < n; c++) {
+							DoubleList dst = a == c ? s : o;
+							int m = Math.min(num, seg[c].length);
+							for (int d = 0; d < m; d++) {
+								dst.add(SpeakerCount.getDistance(cal[a], seg[c][d]));
+							}
+						}
+						return new double[][] {s.toArray(), o.toArray()};
+					}
+				}, calDuration, l, self, other);
+			}
+		}
+	}
+
+	/** distances between all the segments of the same length, for each segment length; the sinks are left open */
+	public void symmetric(DistanceSink self, DistanceSink other) throws IOException {
+		final int n = names.length;
+		for (int l = 1; l <= MAX_SEGMENT_LENGTH; l++) {
+			System.out.println("Segment length:\t" + l);
+			final SpeakerCluster[][] seg = segments[l-1];
+			final int num = SEGMENT_NUMS[l-1];
+			run(new Row() {
+				@Override
+				public double[][] compute(int a) {
+					DoubleList s = new DoubleList(), o = new DoubleList();
+					int ma = Math.min(num, seg[a].length);
+					for (int b = 0; b < ma; b++) {
+						for (int c = 0; c < n; c++) {
+							int m = Math.min(num, seg[c].length);
+							for (int d = 0; d < m; d++) {
+								if (a != c) {
+									o.add(SpeakerCount.getDistance(seg[a][b], seg[c][d]));
+								}
+								else if (b != d) {
+									s.add(SpeakerCount.getDistance(seg[a][b], seg[c][d]));
+								}
+							}
+						}
+					}
+					return new double[][] {s.toArray(), o.toArray()};
+				}
+			}, 0, l, self, other);
+		}
+	}
+
+	/** the self and other distances of one speaker row */
+	private interface Row {
+		double[][] compute(int a);
+	}
+
+	/** compute the rows of all the speakers in parallel and write them in order, with at most 2 rows per thread pending */
+	private void run(final Row row, double calDuration, int l, DistanceSink self, DistanceSink other) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Queue<Future<double[][]>> pending = new ArrayDeque<Future<double[][]>>();
+		try {
+			int next = 0;
+			while (next < names.length || !pending.isEmpty()) {
+				while (next < names.length && pending.size() < 2 * threads) {
+					final int a = next++;
+					pending.add(executor.submit(new Callable<double[][]>() {
+						@Override
+						public double[][] call() {
+							return row.compute(a);
+						}
+					}));
+				}
+				double[][] dist = pending.remove().get();
+				for (double d : dist[0]) {
+					self.write(calDuration, l, d);
+				}
+				for (double d : dist[1]) {
+					other.write(calDuration, l, d);
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			throw asIOException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static IOException asIOException(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof IOException) {
+			return (IOException) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new IOException(cause);
+	}
+
+	/** growable array of doubles */
+	private static class DoubleList {
+		private double[] data = new double[256];
+		private int size = 0;
+
+		void add(double d) {
+			if (size == data.length) {
+				data = Arrays.copyOf(data, size * 2);
+			}
+			data[size++] = d;
+		}
+
+		double[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+	}
+
+	/** run the cross calibration on the directories, writing text or (-b) binary distance files */
+	public static void main(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean binary = false;
+		boolean symmetric = true, asymmetric = true;
+		List<String> dirs = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-j") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-b")) {
+				binary = true;
+			}
+			else if (args[i].equals("-a")) {
+				symmetric = false;
+			}
+			else if (args[i].equals("-s")) {
+				asymmetric = false;
+			}
+			else {
+				dirs.add(args[i]);
+			}
+		}
+		if (dirs.isEmpty() || threads < 1 || (!symmetric && !asymmetric)) {
+			System.err.println("usage: CalibrationEngine [-j threads] [-b] [-a|-s] dir [dir ...]\n"
+					+ "  -j  number of threads (default: number of processors)\n"
+					+ "  -b  write binary distance files (.bin) instead of text\n"
+					+ "  -a  asymmetric calibration only\n"
+					+ "  -s  symmetric calibration only");
+			System.exit(1);
+		}
+		for (String dir : dirs) {
+			long start = System.currentTimeMillis();
+			CalibrationEngine engine = new CalibrationEngine(dir, threads);
+			System.out.println(dir + ": " + engine.getSpeakerCount() + " speakers loaded in " + (System.currentTimeMillis() - start) + " ms");
+			if (asymmetric) {
+				DistanceSink self = open(dir, "distance_self_asymmetric", binary, true);
+				DistanceSink other = open(dir, "distance_other_asymmetric", binary, true);
+				try {
+					engine.asymmetric(CAL_DURATIONS, self, other);
+				} finally {
+					self.close();
+					other.close();
+				}
+			}
+			if (symmetric) {
+				DistanceSink self = open(dir, "distance_self_symmetric", binary, false);
+				DistanceSink other = open(dir, "distance_other_symmetric", binary, false);
+				try {
+					engine.symmetric(self, other);
+				} finally {
+					self.close();
+					other.close();
+				}
+			}
+			System.out.println(dir + ": done in " + (System.currentTimeMillis() - start) + " ms");
+		}
+	}
+
+	private static DistanceSink open(String dir, String name, boolean binary, boolean withDuration) throws IOException {
+		return binary ? new BinaryDistanceSink(dir + "/" + name + ".bin") : new TextDistanceSink(dir + "/" + name + ".txt", withDuration);
+	}
+
+}
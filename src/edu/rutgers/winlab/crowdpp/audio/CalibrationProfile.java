@@ -0,0 +1,553 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.rutgers.winlab.crowdpp.util.Constants;
+import edu.rutgers.winlab.crowdpp.util.FeatureFile;
+import edu.rutgers.winlab.crowdpp.util.FeatureFileReader;
+import edu.rutgers.winlab.crowdpp.util.FileProcess;
+import edu.rutgers.winlab.crowdpp.util.Maths;
+
+/**
+ * The CalibrationProfile class
+ * The owner's calibration data compiled once into its sufficient statistics: the MFCC frame count,
+ * sum and sum of squared deviations (so the mean and variance) plus the pitch statistics.
+ * The profile is stored next to the calibration wav file and the last one loaded is cached for the
+ * process, so the semisupervised counting no longer reads the calibration features every time.
+ * <p>
+ * The MFCC statistics are refined in place with the segments the counting merges into the owner:
+ * the model is weighted down by Constants.owner_forgetting for every merged segment and never
+ * weighs more than Constants.owner_frames_max frames, so a refinement is O(d) and the file keeps
+ * its size. The state before the last refinement is kept to roll it back, in memory and on disk.
+ * The pitch statistics stay as calibrated, they only decide the gender.
+ * <p>
+ * The speakers enrolled besides the owner have their profiles in Constants.enrolledPath, see main.
+ * <p>
+ * All values are little endian; the file is
+ * <pre>
+ * int    magic ("CPCP")
+ * int    version
+ * int    mfcc frame count of the calibration
+ * int    mfcc dimension
+ * int    pitch frame count
+ * double pitch mean
+ * double pitch standard deviation
+ * double mfcc weight (frames), version 2
+ * int    refinement count, version 2
+ * double mfcc weighted sum, dimension values
+ * double mfcc weighted sum of squared deviations, dimension values
+ * </pre>
+ */
+public class CalibrationProfile {
+
+	/** "CPCP" read as little endian int */
+	public static final int MAGIC = 0x50435043;
+
+	public static final int VERSION = 2;
+
+	/** the header size of version 1 and of version 2 */
+	public static final int HEADER_SIZE_V1 = 36;
+	public static final int HEADER_SIZE = 48;
+
+	/** appended to the calibration wav file path, like the feature files */
+	public static final String EXTENSION = ".profile.bin";
+
+	/** appended to the profile file path for the profile before the last refinement */
+	public static final String BACKUP_EXTENSION = ".bak";
+
+	/** the profile loaded last and its calibration wav file */
+	private static CalibrationProfile cached;
+	private static String cachedWavFile;
+
+	/** the enrolled profiles loaded last, their directory and its modification time */
+	private static List<CalibrationProfile> cachedEnrolled;
+	private static String cachedEnrolledDir;
+	private static long cachedEnrolledTime;
+
+	private final int frames;
+	private final int pitchFrames;
+	private final double pitchMean;
+	private final double pitchSigma;
+
+	/** the weighted MFCC statistics, the weight equals frames until the first refinement */
+	private double weight;
+	private double[] sum;
+	private double[] m2;
+	private int updates;
+
+	/** the MFCC statistics before the last refinement, null if there is nothing to roll back */
+	private double snapshotWeight;
+	private double[] snapshotSum;
+	private double[] snapshotM2;
+
+	private CalibrationProfile(int frames, double[] sum, double[] m2, int pitchFrames, double pitchMean, double pitchSigma) {
+		this(frames, sum, m2, pitchFrames, pitchMean, pitchSigma, frames, 0);
+	}
+
+	private CalibrationProfile(int frames, double[] sum, double[] m2, int pitchFrames, double pitchMean, double pitchSigma, double weight, int updates) {
+		this.frames = frames;
+		this.sum = sum;
+		this.m2 = m2;
+		this.pitchFrames = pitchFrames;
+		this.pitchMean = pitchMean;
+		this.pitchSigma = pitchSigma;
+		this.weight = weight;
+		this.updates = updates;
+	}
+
+	/**
+	 * Compile the calibration features (one row per frame) over the first Constants.mfcc_dim MFCC columns,
+	 * the pitch mean is taken over all rows like SpeakerCount.semisupervised did.
+	 */
+	public static CalibrationProfile compile(double[][] mfcc, double[][] pitch) {
+		if (mfcc.length == 0 || pitch.length == 0) {
+			throw new IllegalArgumentException("No calibration data");
+		}
+		double pitchMean = Maths.getColMean(pitch)[0];
+		double variance = 0;
+		for (int i = 0; i < pitch.length; i++) {
+			variance += (pitch[i][0] - pitchMean) * (pitch[i][0] - pitchMean);
+		}
+		int dim = Math.min(mfcc[0].length, Constants.mfcc_dim);
+		SpeakerCluster c = new SpeakerCluster(mfcc, 0, mfcc.length, dim, pitchMean);
+		return new CalibrationProfile(c.getCount(), c.getSum(), c.getSumOfSquares(), pitch.length, pitchMean, Math.sqrt(variance / pitch.length));
+	}
+
+	/**
+	 * Compile the voiced segments of a recording (e.g. from StreamingSegmenter.getSegments), for the
+	 * speakers enrolled besides the owner; the pitch statistics are over the segment pitches.
+	 */
+	public static CalibrationProfile compile(List<SpeakerCluster> segments) {
+		if (segments.size() == 0) {
+			throw new IllegalArgumentException("No calibration data");
+		}
+		double pitchMean = 0;
+		for (SpeakerCluster c : segments) {
+			pitchMean += c.getPitch();
+		}
+		pitchMean /= segments.size();
+		double variance = 0;
+		SpeakerCluster all = segments.get(0).copy();
+		for (int i = 0; i < segments.size(); i++) {
+			SpeakerCluster c = segments.get(i);
+			variance += (c.getPitch() - pitchMean) * (c.getPitch() - pitchMean);
+			if (i > 0) {
+				all.merge(c);
+			}
+		}
+		return new CalibrationProfile(all.getCount(), all.getSum(), all.getSumOfSquares(), segments.size(), pitchMean, Math.sqrt(variance / segments.size()));
+	}
+
+	/**
+	 * The profiles of the speakers enrolled besides the owner, all the profile files of the directory
+	 * sorted by name; they are read again only when the directory changes.
+	 * @return the profiles, empty if there are none
+	 */
+	public static synchronized List<CalibrationProfile> loadEnrolled(String dir) throws IOException {
+		File directory = new File(dir);
+		long time = directory.lastModified();
+		if (cachedEnrolled != null && dir.equals(cachedEnrolledDir) && time == cachedEnrolledTime) {
+			return cachedEnrolled;
+		}
+		List<CalibrationProfile> profiles = new ArrayList<CalibrationProfile>();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			Arrays.sort(files);
+			for (File file : files) {
+				if (file.isFile() && file.getName().endsWith(EXTENSION)) {
+					profiles.add(read(file.getPath()));
+				}
+			}
+		}
+		cachedEnrolled = Collections.unmodifiableList(profiles);
+		cachedEnrolledDir = dir;
+		cachedEnrolledTime = time;
+		return cachedEnrolled;
+	}
+
+	/** @return the profile file belonging to the calibration wav file */
+	public static String getPath(String wavFile) {
+		return wavFile + EXTENSION;
+	}
+
+	/**
+	 * Compile the features of the calibration wav file, store the profile and cache it.
+	 * Called after the calibration is done.
+	 * @return the profile, or null if there are no calibration features
+	 */
+	public static synchronized CalibrationProfile compile(String wavFile) throws IOException {
+		FeatureFileReader features = FeatureFile.open(wavFile);
+		if (features == null || features.getMfcc().length == 0 || features.getPitch().length == 0) {
+			return null;
+		}
+		CalibrationProfile profile = compile(features.getMfcc(), features.getPitch());
+		profile.write(getPath(wavFile));
+		cached = profile;
+		cachedWavFile = wavFile;
+		Constants.setCalibration(true);
+		return profile;
+	}
+
+	/**
+	 * The cached profile of the calibration wav file; otherwise it is read from its file, or compiled
+	 * if the calibration was done before there were profiles.
+	 * @return the profile, or null if there is no calibration
+	 */
+	public static synchronized CalibrationProfile load(String wavFile) throws IOException {
+		if (cached != null && wavFile.equals(cachedWavFile)) {
+			return cached;
+		}
+		File file = new File(getPath(wavFile));
+		if (!file.exists()) {
+			return compile(wavFile);
+		}
+		cached = read(file.getPath());
+		cachedWavFile = wavFile;
+		return cached;
+	}
+
+	/** drop the cached and the stored profile, called before the calibration is redone */
+	public static synchronized void invalidate(String wavFile) {
+		if (wavFile.equals(cachedWavFile)) {
+			cached = null;
+			cachedWavFile = null;
+		}
+		FileProcess.deleteFile(getPath(wavFile));
+		FileProcess.deleteFile(getPath(wavFile) + BACKUP_EXTENSION);
+		Constants.setCalibration(false);
+	}
+
+	/**
+	 * Refine the profile of the calibration wav file with the segments merged into the owner and store it,
+	 * the stored profile before is kept as the backup.
+	 * @return false if there is no profile or nothing to refine
+	 */
+	public static synchronized boolean refine(String wavFile, List<SpeakerCluster> segments) throws IOException {
+		CalibrationProfile profile = load(wavFile);
+		if (profile == null || !profile.refine(segments)) {
+			return false;
+		}
+		String path = getPath(wavFile);
+		File backup = new File(path + BACKUP_EXTENSION);
+		backup.delete();
+		new File(path).renameTo(backup);
+		profile.write(path);
+		return true;
+	}
+
+	/**
+	 * Undo the last refinement of the profile of the calibration wav file, in memory or from the backup file.
+	 * @return false if there is nothing to roll back
+	 */
+	public static synchronized boolean rollback(String wavFile) throws IOException {
+		String path = getPath(wavFile);
+		File backup = new File(path + BACKUP_EXTENSION);
+		CalibrationProfile profile = load(wavFile);
+		if (profile != null && profile.rollback()) {
+			profile.write(path);
+			backup.delete();
+			return true;
+		}
+		if (!backup.exists()) {
+			return false;
+		}
+		cached = read(backup.getPath());
+		cachedWavFile = wavFile;
+		cached.write(path);
+		backup.delete();
+		return true;
+	}
+
+	/**
+	 * Add the owner's segments to the MFCC statistics, each one after weighting the model down by
+	 * Constants.owner_forgetting, and scale the model down to Constants.owner_frames_max frames.
+	 * The state before is kept for rollback().
+	 * @return false if there are no segments
+	 */
+	public synchronized boolean refine(List<SpeakerCluster> segments) {
+		if (segments == null || segments.size() == 0) {
+			return false;
+		}
+		snapshotWeight = weight;
+		snapshotSum = sum.clone();
+		snapshotM2 = m2.clone();
+		double[] s = sum.clone();
+		double[] q = m2.clone();
+		double w = weight;
+		for (SpeakerCluster c : segments) {
+			if (c.getCount() == 0) {
+				continue;
+			}
+			if (c.getDimension() < s.length) {
+				throw new IllegalArgumentException("Cannot refine " + s.length + " dimensions with " + c.getDimension());
+			}
+			double forgetting = Constants.owner_forgetting;
+			for (int j = 0; j < s.length; j++) {
+				s[j] *= forgetting;
+				q[j] *= forgetting;
+			}
+			w *= forgetting;
+			// the pairwise update of Chan et al. with weights, like SpeakerCluster.merge
+			double[] cSum = c.getSum();
+			double[] cM2 = c.getSumOfSquares();
+			int n = c.getCount();
+			double total = w + n;
+			for (int j = 0; j < s.length; j++) {
+				double delta = cSum[j] / n - s[j] / w;
+				q[j] += cM2[j] + delta * delta * w * n / total;
+				s[j] += cSum[j];
+			}
+			w = total;
+			if (w > Constants.owner_frames_max) {
+				double scale = Constants.owner_frames_max / w;
+				for (int j = 0; j < s.length; j++) {
+					s[j] *= scale;
+					q[j] *= scale;
+				}
+				w = Constants.owner_frames_max;
+			}
+		}
+		weight = w;
+		sum = s;
+		m2 = q;
+		updates++;
+		return true;
+	}
+
+	/**
+	 * Restore the MFCC statistics before the last refine().
+	 * @return false if there is nothing to roll back
+	 */
+	public synchronized boolean rollback() {
+		if (snapshotSum == null) {
+			return false;
+		}
+		weight = snapshotWeight;
+		sum = snapshotSum;
+		m2 = snapshotM2;
+		snapshotSum = null;
+		snapshotM2 = null;
+		updates--;
+		return true;
+	}
+
+	/** read a profile file */
+	public static CalibrationProfile read(String filename) throws IOException {
+		FileInputStream fis = new FileInputStream(filename);
+		try {
+			FileChannel channel = fis.getChannel();
+			long size = channel.size();
+			if (size < HEADER_SIZE_V1 || size > Integer.MAX_VALUE) {
+				throw new IOException(filename + " is not a calibration profile");
+			}
+			ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+			while (buf.hasRemaining()) {
+				if (channel.read(buf) < 0) {
+					throw new IOException("Unexpected end of " + filename);
+				}
+			}
+			buf.flip();
+
+			if (buf.getInt() != MAGIC) {
+				throw new IOException(filename + " is not a calibration profile");
+			}
+			int version = buf.getInt();
+			if (version < 1 || version > VERSION) {
+				throw new IOException("Unsupported calibration profile version " + version);
+			}
+			int headerSize = version == 1 ? HEADER_SIZE_V1 : HEADER_SIZE;
+			int frames = buf.getInt();
+			int dim = buf.getInt();
+			int pitchFrames = buf.getInt();
+			if (frames <= 0 || dim <= 0 || pitchFrames <= 0 || headerSize + 16L * dim != size) {
+				throw new IOException("Corrupted calibration profile " + filename);
+			}
+			double pitchMean = buf.getDouble();
+			double pitchSigma = buf.getDouble();
+			double weight = frames;
+			int updates = 0;
+			if (version >= 2) {
+				weight = buf.getDouble();
+				updates = buf.getInt();
+				if (!(weight > 0)) {
+					throw new IOException("Corrupted calibration profile " + filename);
+				}
+			}
+			double[] sum = new double[dim];
+			double[] m2 = new double[dim];
+			for (int j = 0; j < dim; j++) {
+				sum[j] = buf.getDouble();
+			}
+			for (int j = 0; j < dim; j++) {
+				m2[j] = buf.getDouble();
+			}
+			return new CalibrationProfile(frames, sum, m2, pitchFrames, pitchMean, pitchSigma, weight, updates);
+		} finally {
+			fis.close();
+		}
+	}
+
+	/** write the profile file, replacing the old one only when it is complete */
+	public synchronized void write(String filename) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + 16 * sum.length).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(MAGIC);
+		buf.putInt(VERSION);
+		buf.putInt(frames);
+		buf.putInt(sum.length);
+		buf.putInt(pitchFrames);
+		buf.putDouble(pitchMean);
+		buf.putDouble(pitchSigma);
+		buf.putDouble(weight);
+		buf.putInt(updates);
+		for (int j = 0; j < sum.length; j++) {
+			buf.putDouble(sum[j]);
+		}
+		for (int j = 0; j < m2.length; j++) {
+			buf.putDouble(m2[j]);
+		}
+		buf.flip();
+
+		File tmp = new File(filename + ".tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		try {
+			FileChannel channel = fos.getChannel();
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+		} finally {
+			fos.close();
+		}
+		File file = new File(filename);
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				throw new IOException("Cannot write " + filename);
+			}
+		}
+	}
+
+	/** @return a new cluster of the owner's frames, with the mean pitch; a refined model counts its weight rounded */
+	public synchronized SpeakerCluster getCluster() {
+		int count = (int) Math.max(1, Math.round(weight));
+		if (count == weight) {
+			return new SpeakerCluster(count, sum.clone(), m2.clone(), pitchMean);
+		}
+		double scale = count / weight;
+		double[] s = new double[sum.length];
+		double[] q = new double[m2.length];
+		for (int j = 0; j < s.length; j++) {
+			s[j] = sum[j] * scale;
+			q[j] = m2[j] * scale;
+		}
+		return new SpeakerCluster(count, s, q, pitchMean);
+	}
+
+	/** @return the number of MFCC frames of the calibration */
+	public int getFrameCount() {
+		return frames;
+	}
+
+	/** @return the number of frames the MFCC statistics are worth after the refinements */
+	public synchronized double getWeight() {
+		return weight;
+	}
+
+	/** @return the number of refinements */
+	public synchronized int getUpdateCount() {
+		return updates;
+	}
+
+	/** @return the number of MFCC dimensions */
+	public int getDimension() {
+		return sum.length;
+	}
+
+	/** @return the per dimension MFCC mean */
+	public double[] getMean() {
+		return getCluster().getMean();
+	}
+
+	/** @return the per dimension (population) MFCC variance */
+	public double[] getVariance() {
+		return getCluster().getVariance();
+	}
+
+	/** @return the number of pitch rows */
+	public int getPitchFrameCount() {
+		return pitchFrames;
+	}
+
+	/** @return the mean pitch */
+	public double getPitchMean() {
+		return pitchMean;
+	}
+
+	/** @return the (population) standard deviation of the pitch */
+	public double getPitchSigma() {
+		return pitchSigma;
+	}
+
+	/** enroll the speakers of the given 8kHz 16bit wav files besides the owner */
+	public static void main(String[] args) throws Exception {
+		String dir = Constants.enrolledPath;
+		int first = 0;
+		if (args.length >= 2 && args[0].equals("-d")) {
+			dir = args[1];
+			first = 2;
+		}
+		if (args.length <= first) {
+			System.err.println("usage: CalibrationProfile [-d enrolled-dir] wav-file [wav-file ...]\n"
+					+ "  writes the profile of every recording into the enrolled directory as <name>" + EXTENSION);
+			System.exit(1);
+		}
+		new File(dir).mkdirs();
+		for (int i = first; i < args.length; i++) {
+			StreamingSegmenter segmenter = new StreamingSegmenter();
+			FeatureExtractor.extract(args[i], segmenter);
+			List<SpeakerCluster> segments = segmenter.getSegments();
+			double seconds = segments.size() * Constants.seg_duration_sec;
+			if (segments.size() == 0 || seconds < Constants.cal_duration_sec_lower) {
+				System.err.println(args[i] + ": " + seconds + " seconds of voice, at least " + Constants.cal_duration_sec_lower + " are needed");
+				continue;
+			}
+			String name = new File(args[i]).getName();
+			String out = new File(dir, name + EXTENSION).getPath();
+			compile(segments).write(out);
+			System.out.println(out + "\t" + seconds + " seconds");
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.io.IOException;
+
+/**
+ * The DistanceSink interface
+ * Receives the distances computed by the CalibrationEngine, in the order of the legacy loops.
+ */
+public interface DistanceSink {
+
+	/**
+	 * @param calDuration the calibration duration in seconds, 0 for the symmetric calibration
+	 * @param segmentLength the segment length in seconds
+	 * @param distance the distance between the two segments
+	 */
+	void write(double calDuration, int segmentLength, double distance) throws IOException;
+
+	/** flush and close the output */
+	void close() throws IOException;
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+/**
+ * The EnrolleeIndex class
+ * Nearest centroid search over the enrolled speakers on the cosine distance: the MFCC means are
+ * normalized once and kept in one array, so matching a segment is one dot product per enrollee,
+ * without the norms and arc cosines of Distances.Cosine. Only the enrollees whose gender is not
+ * different from the segment's (SpeakerCount.genderDecision) are candidates.
+ */
+public class EnrolleeIndex {
+
+	private final int dim;
+
+	/** the normalized means, dim values per enrollee */
+	private double[] unit = new double[0];
+	private double[] pitch = new double[0];
+	private int size = 0;
+
+	public EnrolleeIndex(int dim) {
+		this.dim = dim;
+	}
+
+	/** add an enrollee with its MFCC mean and its pitch, @return its index */
+	public int add(double[] mean, double pitch) {
+		if (size * dim == unit.length) {
+			int capacity = Math.max(4, size * 2);
+			double[] grownUnit = new double[capacity * dim];
+			System.arraycopy(unit, 0, grownUnit, 0, size * dim);
+			unit = grownUnit;
+			double[] grownPitch = new double[capacity];
+			System.arraycopy(this.pitch, 0, grownPitch, 0, size);
+			this.pitch = grownPitch;
+		}
+		this.pitch[size] = pitch;
+		update(size, mean);
+		return size++;
+	}
+
+	/** replace the MFCC mean of the enrollee, e.g. after segments were merged into it */
+	public void update(int i, double[] mean) {
+		double norm = 0;
+		for (int j = 0; j < dim; j++) {
+			norm += mean[j] * mean[j];
+		}
+		norm = Math.sqrt(norm);
+		int offset = i * dim;
+		for (int j = 0; j < dim; j++) {
+			unit[offset + j] = norm > 0 ? mean[j] / norm : 0;
+		}
+	}
+
+	/** @return the number of enrollees */
+	public int size() {
+		return size;
+	}
+
+	/** @return the enrollee with the smallest cosine distance to the mean among those not of the other gender, -1 if there is none */
+	public int nearest(double[] mean, double pitch) {
+		int best = -1;
+		double bestDot = Double.NEGATIVE_INFINITY;
+		for (int i = 0, offset = 0; i < size; i++, offset += dim) {
+			if (SpeakerCount.genderDecision(pitch, this.pitch[i]) == 0) {
+				continue;
+			}
+			// the norm of the mean is the same for all enrollees, the largest dot product is the smallest angle
+			double dot = 0;
+			for (int j = 0; j < dim; j++) {
+				dot += unit[offset + j] * mean[j];
+			}
+			if (best < 0 || dot > bestDot) {
+				best = i;
+				bestDot = dot;
+			}
+		}
+		return best;
+	}
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import edu.rutgers.winlab.crowdpp.util.Constants;
+
+/**
+ * The FeatureExtractor class
+ * Computes the YIN pitch and the MFCC features in a single pass over the PCM samples:
+ * one SharedFramer hands the same frames to the pitch tracker and to the MFCC chain.
+ * With a StreamingSegmenter the frames are segmented as they come and the features are not kept.
+ * The extraction is staged: frames below the energy gate skip YIN, and when segmenting with
+ * Constants.mfcc_lazy the MFCC is only computed for the segments that pass the pitch filter.
+ * A FidelityProfile sets the frame hop, the MFCC chain, how often YIN runs and how many samples are taken.
+ */
+public class FeatureExtractor implements FrameConsumer, MfccFrameChain.Listener {
+
+	private final SharedFramer framer;
+	private final MfccFrameChain mfccChain;
+	private final Yin yin;
+
+	/** the pitch of every frame, or of the frames still waiting for their MFCC row when segmenting */
+	private float[] pitch = new float[1024];
+	private int frames = 0;
+	/** the next pitch to pair with an MFCC row when segmenting */
+	private int head = 0;
+
+	/** null if the features are kept */
+	private final StreamingSegmenter segmenter;
+	/** the segmenter takes the windowed frames and computes their MFCC itself */
+	private final boolean lazy;
+	private final double energyLower;
+	private int gated = 0;
+
+	/** YIN runs on every pitchStride-th frame above the gate, the frames in between keep its pitch */
+	private final int pitchStride;
+	private int loud = 0, tracked = 0;
+	private float lastPitch = -1;
+	/** the samples taken so far and the most taken, 0 for no limit */
+	private long samples = 0;
+	private final long maxSamples;
+
+	public FeatureExtractor(int sampleRate) throws Exception {
+		this(sampleRate, null);
+	}
+
+	/** feed the frames to the segmenter instead of keeping the features, unless it is null */
+	public FeatureExtractor(int sampleRate, StreamingSegmenter segmenter) throws Exception {
+		this(sampleRate, segmenter, FidelityProfile.FULL);
+	}
+
+	/** extract at the fidelity of the profile, the segmenter (unless null) needs the same frame hop and at most its cepstra */
+	public FeatureExtractor(int sampleRate, StreamingSegmenter segmenter, FidelityProfile profile) throws Exception {
+		this.segmenter = segmenter;
+		framer = new SharedFramer(sampleRate, profile.getFrameStride());
+		mfccChain = new MfccFrameChain(sampleRate, framer.getFrameSize(), segmenter != null ? this : null, profile);
+		yin = new Yin(sampleRate, framer.getFrameSize(), Constants.yin_fft);
+		energyLower = Constants.yin_energy_lower;
+		lazy = segmenter != null && Constants.mfcc_lazy;
+		pitchStride = profile.getPitchStride();
+		maxSamples = (long) (profile.getMaxSeconds() * sampleRate);
+		framer.addConsumer(this);
+		if (lazy) {
+			segmenter.setMfccChain(mfccChain);
+		}
+		else {
+			framer.addConsumer(mfccChain);
+		}
+	}
+
+	/** @return the features of the 8kHz 16bit wav file, read once */
+	public static FeatureExtractor extract(String wavFile) throws Exception {
+		return extract(wavFile, null);
+	}
+
+	/** @return the features of the 8kHz 16bit wav file, read once and fed to the segmenter unless it is null */
+	public static FeatureExtractor extract(String wavFile, StreamingSegmenter segmenter) throws Exception {
+		return extract(wavFile, segmenter, FidelityProfile.FULL);
+	}
+
+	/** @return the features of the 8kHz 16bit wav file at the fidelity of the profile, fed to the segmenter unless it is null */
+	public static FeatureExtractor extract(String wavFile, StreamingSegmenter segmenter, FidelityProfile profile) throws Exception {
+		FeatureExtractor extractor = new FeatureExtractor((int) PitchTracker.DEFAULT_SAMPLE_RATE, segmenter, profile);
+		InputStream is = new FileInputStream(wavFile);
+		try {
+			extractor.process(is);
+		} finally {
+			is.close();
+		}
+		return extractor;
+	}
+
+	/** add the 16bit little endian samples of the buffer, the samples past the maximum duration are dropped */
+	public void write(byte[] buffer, int length) {
+		if (maxSamples > 0) {
+			long room = 2 * (maxSamples - samples);
+			if (room <= 0) {
+				return;
+			}
+			length = (int) Math.min(length, room);
+		}
+		samples += length / 2;
+		framer.write(buffer, length);
+	}
+
+	/** emit the zero padded trailing frames, call once after the last buffer */
+	public void finish() {
+		framer.flush();
+	}
+
+	/** read the whole stream and finish */
+	public void process(InputStream is) throws IOException {
+		byte[] buffer = new byte[64 * 1024];
+		int n;
+		while ((n = is.read(buffer)) > 0) {
+			write(buffer, n);
+		}
+		finish();
+	}
+
+	@Override
+	public void onRawFrame(float[] frame) {
+		if (frames == pitch.length) {
+			float[] grown = new float[pitch.length * 2];
+			System.arraycopy(pitch, 0, grown, 0, frames);
+			pitch = grown;
+		}
+		pitch[frames++] = isSilent(frame) ? -1 : track(frame);
+	}
+
+	/** @return the pitch of the frame, or of the last frame YIN ran on */
+	private float track(float[] frame) {
+		if (loud++ % pitchStride == 0) {
+			lastPitch = yin.getPitch(frame);
+			tracked++;
+		}
+		return lastPitch;
+	}
+
+	/** the energy of EnergyDetector, per sample */
+	private boolean isSilent(float[] frame) {
+		if (energyLower <= 0) {
+			return false;
+		}
+		double energy = 0;
+		for (int i = 0; i < frame.length; i++) {
+			energy += Math.abs(frame[i]);
+		}
+		if (energy < energyLower * frame.length) {
+			gated++;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void onWindowedFrame(double[] frame) {
+		if (lazy) {
+			onMfcc(frame);
+		}
+	}
+
+	/** pair the MFCC row, or the windowed frame when lazy, with its pitch */
+	@Override
+	public void onMfcc(double[] mfcc) {
+		// the trailing zero padded frames may have no pitch, like in segmentation(mfcc, pitch) they are left out
+		if (head < frames) {
+			segmenter.addFrame(mfcc, pitch[head++]);
+			if (head == frames) {
+				head = 0;
+				frames = 0;
+			}
+		}
+	}
+
+	/** @return the number of frames that skipped YIN */
+	public int getGatedFrameCount() {
+		return gated;
+	}
+
+	/** @return the number of frames YIN ran on */
+	public int getPitchFrameCount() {
+		return tracked;
+	}
+
+	/** @return the number of samples taken */
+	public long getSampleCount() {
+		return samples;
+	}
+
+	/** @return true if the frames go to a StreamingSegmenter */
+	public boolean isSegmenting() {
+		return segmenter != null;
+	}
+
+	/** @return the segmenter, null if the features are kept */
+	public StreamingSegmenter getSegmenter() {
+		return segmenter;
+	}
+
+	/** @return the MFCC features, one row per frame (none when segmenting) */
+	public double[][] getMfcc() {
+		return mfccChain.getMfcc();
+	}
+
+	/** @return the pitch in Hz (-1 if unvoiced), one row per frame (none when segmenting) */
+	public double[][] getPitch() {
+		if (segmenter != null) {
+			return new double[0][];
+		}
+		double[][] dat = new double[frames][1];
+		for (int i = 0; i < frames; i++) {
+			dat[i][0] = pitch[i];
+		}
+		return dat;
+	}
+
+}
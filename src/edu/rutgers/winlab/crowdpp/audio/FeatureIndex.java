@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+/**
+ * The FeatureIndex class
+ * Cumulative sums and sums of squares of the MFCC frames and of the voiced pitch of one recording,
+ * built once so the statistics of any [start, end) frame range take O(d) without copying frames.
+ * The MFCC sums are taken around the column means of the recording, which keeps the variance
+ * accurate when it is computed from the difference of two cumulative sums. Building the MFCC sums
+ * costs more than one pass over the frames, so a single pass at a single segment length should
+ * index only the pitch.
+ */
+public class FeatureIndex {
+
+	/** the time of the first frame and the frame shift in seconds */
+	public static final double FIRST_FRAME_TIME = 0.032;
+	public static final double FRAME_SHIFT = 0.016;
+
+	private final int frames;
+	private final int dim;
+
+	/** the column means, the MFCC sums are taken around them */
+	private final double[] ref;
+	/** (frames + 1) rows of dim prefix sums of x - ref and of (x - ref)^2, null if only the pitch is indexed */
+	private final double[] sum, sumSq;
+
+	/** frames + 1 prefix counts and sums of the voiced pitch, taken around pitchRef */
+	private final int[] voiced;
+	private final double pitchRef;
+	private final double[] pitchSum, pitchSumSq;
+
+	/** index of the first dim MFCC columns, every pitch other than -1 is voiced */
+	public FeatureIndex(double[][] mfcc, double[][] pitch, int dim) {
+		this(mfcc, pitch, dim, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+	}
+
+	/** index of the pitch only, a pitch is voiced if it is not -1 and within [pitchLower, pitchUpper] */
+	public FeatureIndex(double[][] pitch, double pitchLower, double pitchUpper) {
+		this(null, pitch, 0, pitchLower, pitchUpper);
+	}
+
+	/**
+	 * Index of the first dim MFCC columns, a pitch is voiced if it is not -1 and within [pitchLower, pitchUpper].
+	 * The pitch may be shorter than the MFCC frames, the missing frames are unvoiced.
+	 * Without MFCC (null) only the pitch is indexed.
+	 */
+	public FeatureIndex(double[][] mfcc, double[][] pitch, int dim, double pitchLower, double pitchUpper) {
+		this.frames = mfcc != null ? mfcc.length : pitch.length;
+		this.dim = mfcc != null ? dim : 0;
+
+		if (mfcc == null) {
+			ref = sum = sumSq = null;
+		}
+		else {
+			ref = new double[dim];
+			for (int i = 0; i < frames; i++) {
+				for (int j = 0; j < dim; j++) {
+					ref[j] += mfcc[i][j];
+				}
+			}
+			for (int j = 0; j < dim; j++) {
+				ref[j] = frames > 0 ? ref[j] / frames : 0;
+			}
+			sum = new double[(frames + 1) * dim];
+			sumSq = new double[(frames + 1) * dim];
+			for (int i = 0; i < frames; i++) {
+				int prev = i * dim, next = prev + dim;
+				for (int j = 0; j < dim; j++) {
+					double d = mfcc[i][j] - ref[j];
+					sum[next + j] = sum[prev + j] + d;
+					sumSq[next + j] = sumSq[prev + j] + d * d;
+				}
+			}
+		}
+
+		voiced = new int[frames + 1];
+		pitchSum = new double[frames + 1];
+		pitchSumSq = new double[frames + 1];
+		double total = 0;
+		int count = 0;
+		for (int i = 0; i < frames && i < pitch.length; i++) {
+			if (isVoiced(pitch[i][0], pitchLower, pitchUpper)) {
+				total += pitch[i][0];
+				count++;
+			}
+		}
+		pitchRef = count > 0 ? total / count : 0;
+		for (int i = 0; i < frames; i++) {
+			double p = i < pitch.length ? pitch[i][0] : -1;
+			if (isVoiced(p, pitchLower, pitchUpper)) {
+				double d = p - pitchRef;
+				voiced[i+1] = voiced[i] + 1;
+				pitchSum[i+1] = pitchSum[i] + d;
+				pitchSumSq[i+1] = pitchSumSq[i] + d * d;
+			}
+			else {
+				voiced[i+1] = voiced[i];
+				pitchSum[i+1] = pitchSum[i];
+				pitchSumSq[i+1] = pitchSumSq[i];
+			}
+		}
+	}
+
+	private static boolean isVoiced(double pitch, double lower, double upper) {
+		return pitch != -1 && pitch >= lower && pitch <= upper;
+	}
+
+	private void checkMfcc() {
+		if (sum == null) {
+			throw new IllegalStateException("Only the pitch is indexed");
+		}
+	}
+
+	/** @return the number of frames */
+	public int getFrameCount() {
+		return frames;
+	}
+
+	/** @return the number of MFCC dimensions, 0 if only the pitch is indexed */
+	public int getDimension() {
+		return dim;
+	}
+
+	/** @return the per dimension sum of the frames in [start, end), written into out */
+	public double[] getSum(int start, int end, double[] out) {
+		checkMfcc();
+		int n = end - start;
+		for (int j = 0; j < dim; j++) {
+			out[j] = (sum[end * dim + j] - sum[start * dim + j]) + n * ref[j];
+		}
+		return out;
+	}
+
+	/** @return the per dimension mean of the frames in [start, end), written into out */
+	public double[] getMean(int start, int end, double[] out) {
+		checkMfcc();
+		int n = end - start;
+		for (int j = 0; j < dim; j++) {
+			out[j] = ref[j] + (sum[end * dim + j] - sum[start * dim + j]) / n;
+		}
+		return out;
+	}
+
+	/** @return the per dimension sum of squared deviations from the mean of the frames in [start, end), written into out */
+	public double[] getSumOfSquares(int start, int end, double[] out) {
+		checkMfcc();
+		int n = end - start;
+		for (int j = 0; j < dim; j++) {
+			double s = sum[end * dim + j] - sum[start * dim + j];
+			double m2 = (sumSq[end * dim + j] - sumSq[start * dim + j]) - s * s / n;
+			out[j] = m2 > 0 ? m2 : 0;
+		}
+		return out;
+	}
+
+	/** @return the per dimension (population) variance of the frames in [start, end), written into out */
+	public double[] getVariance(int start, int end, double[] out) {
+		getSumOfSquares(start, end, out);
+		int n = end - start;
+		for (int j = 0; j < dim; j++) {
+			out[j] /= n;
+		}
+		return out;
+	}
+
+	/** @return the number of voiced frames in [start, end) */
+	public int getVoicedCount(int start, int end) {
+		return voiced[end] - voiced[start];
+	}
+
+	/** @return the fraction of voiced frames in [start, end) */
+	public double getVoicedRate(int start, int end) {
+		return (double) getVoicedCount(start, end) / (end - start);
+	}
+
+	/** @return the mean voiced pitch in [start, end), NaN without voiced frames */
+	public double getPitchMean(int start, int end) {
+		int n = getVoicedCount(start, end);
+		if (n == 0) {
+			return Double.NaN;
+		}
+		return pitchRef + (pitchSum[end] - pitchSum[start]) / n;
+	}
+
+	/** @return the (population) standard deviation of the voiced pitch in [start, end), NaN without voiced frames */
+	public double getPitchSigma(int start, int end) {
+		int n = getVoicedCount(start, end);
+		if (n == 0) {
+			return Double.NaN;
+		}
+		double s = pitchSum[end] - pitchSum[start];
+		double m2 = (pitchSumSq[end] - pitchSumSq[start]) - s * s / n;
+		return Math.sqrt(m2 > 0 ? m2 / n : 0);
+	}
+
+	/** @return the cluster of the frames in [start, end) with the given pitch */
+	public SpeakerCluster getCluster(int start, int end, double pitch) {
+		return new SpeakerCluster(end - start, getSum(start, end, new double[dim]), getSumOfSquares(start, end, new double[dim]), pitch);
+	}
+
+	/**
+	 * Split the frames into segments of the given length in seconds, like the speaker counting always did:
+	 * the frame times start at 32ms with a 16ms shift, segment i ends at the last frame at or before
+	 * (i + 1) * seconds and the next segment starts after that frame.
+	 * @return {lower, upper}, segment i covers the frames in [lower[i], upper[i]) so its last frame is left out
+	 */
+	public static int[][] getSegmentBounds(int frames, double seconds) {
+		if (frames == 0) {
+			return new int[2][0];
+		}
+		double[] time = new double[frames];
+		time[0] = FIRST_FRAME_TIME;
+		for (int i = 1; i < frames; i++) {
+			time[i] = time[i-1] + FRAME_SHIFT;
+		}
+		int seg_num = (int) Math.floor(time[frames - 1] / seconds);
+		int[] lower_id = new int[seg_num];
+		int[] upper_id = new int[seg_num];
+		int seg_id = 0;
+		for (int i = 0; i + 1 < frames && seg_id < seg_num; i++) {
+			double bound = (seg_id + 1) * seconds;
+			if (time[i] <= bound && time[i+1] > bound) {
+				upper_id[seg_id] = i;
+				seg_id++;
+				if (seg_id < seg_num) {
+					lower_id[seg_id] = i + 1;
+				}
+			}
+		}
+		if (seg_id < seg_num) {
+			// the last bound falls on the last frame
+			int[][] bounds = new int[2][seg_id];
+			System.arraycopy(lower_id, 0, bounds[0], 0, seg_id);
+			System.arraycopy(upper_id, 0, bounds[1], 0, seg_id);
+			return bounds;
+		}
+		return new int[][] {lower_id, upper_id};
+	}
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import edu.rutgers.winlab.crowdpp.util.Constants;
+
+/**
+ * The FidelityBenchmark class
+ * Counts the speakers of a reference corpus at every built-in FidelityProfile and reports what each one
+ * costs (extraction and counting time, YIN and MFCC frames per minute of audio) and loses (exact counts,
+ * mean count error, counts that differ from the full profile). Run on a desktop JVM:
+ * <pre>
+ * java edu.rutgers.winlab.crowdpp.audio.FidelityBenchmark [-u same,diff] [-n recordings] [-s seconds] [corpus-list]
+ * </pre>
+ * A corpus list has one 8kHz 16bit wav file and its number of speakers per line. Without one the corpus is
+ * synthesized: conversations of one to four voices, each a glottal pulse train through three speaker
+ * dependent formants, taking turns of one to five seconds over a noise floor.
+ */
+public class FidelityBenchmark {
+
+	private static final int RATE = 8000;
+
+	/** F1, F2, F3 in Hz of the vowels a, e, i, o, u */
+	private static final double[][] VOWELS = {{730, 1090, 2440}, {530, 1840, 2480}, {270, 2290, 3010}, {570, 840, 2410}, {300, 870, 2240}};
+
+	/** one recording of the corpus, the PCM of a synthesized one or the path of a wav file */
+	private static class Recording {
+		final String name;
+		final int speakers;
+		final byte[] pcm;
+		final String wavFile;
+		final double seconds;
+
+		Recording(String name, int speakers, byte[] pcm, String wavFile, double seconds) {
+			this.name = name;
+			this.speakers = speakers;
+			this.pcm = pcm;
+			this.wavFile = wavFile;
+			this.seconds = seconds;
+		}
+	}
+
+	/** keeps the timed results alive */
+	private static int sink;
+
+	public static void main(String[] args) throws Exception {
+		double[] un = {15.6, 21.6};
+		int n = 40;
+		double seconds = 180;
+		String list = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-u")) {
+				String[] v = args[++i].split(",");
+				un = new double[] {Double.parseDouble(v[0]), Double.parseDouble(v[1])};
+			}
+			else if (args[i].equals("-n")) {
+				n = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-s")) {
+				seconds = Double.parseDouble(args[++i]);
+			}
+			else {
+				list = args[i];
+			}
+		}
+		Constants.mfcc_dist_same_un = un[0];
+		Constants.mfcc_dist_diff_un = un[1];
+
+		List<Recording> corpus = list != null ? read(list) : synthesize(n, seconds, new Random(25));
+		double minutes = 0;
+		for (Recording r : corpus) {
+			minutes += r.seconds / 60;
+		}
+		System.out.println(String.format(Locale.US, "%d recordings, %.1f min, unsupervised thresholds %.1f,%.1f", 
+				corpus.size(), minutes, un[0], un[1]));
+		for (FidelityProfile profile : FidelityProfile.PROFILES) {
+			System.out.println("  " + profile);
+		}
+		System.out.println();
+		System.out.println("profile    exact  mean error  mean |error|  same as full  ms/min  speedup  YIN frames/min  MFCC frames/min");
+
+		FidelityProfile[] profiles = FidelityProfile.PROFILES;
+		int[][] counts = new int[profiles.length][corpus.size()];
+		long[] yin = new long[profiles.length], mfcc = new long[profiles.length];
+		long[] best = new long[profiles.length];
+		Arrays.fill(best, Long.MAX_VALUE);
+		// warm up, then take the best of three rounds, the profiles take turns so they see the same machine
+		for (int round = 0; round < 4; round++) {
+			for (int p = 0; p < profiles.length; p++) {
+				long t = 0;
+				yin[p] = 0;
+				mfcc[p] = 0;
+				for (int i = 0; i < corpus.size(); i++) {
+					long t0 = System.nanoTime();
+					FeatureExtractor extractor = extract(corpus.get(i), profiles[p]);
+					List<SpeakerCluster> segments = extractor.getSegmenter().finish();
+					counts[p][i] = segments == null ? 0 : SpeakerCount.unsupervised(segments);
+					t += System.nanoTime() - t0;
+					yin[p] += extractor.getPitchFrameCount();
+					mfcc[p] += extractor.getSegmenter().getMfccFrameCount();
+					sink += counts[p][i];
+				}
+				if (round > 0) {
+					best[p] = Math.min(best[p], t);
+				}
+			}
+		}
+		for (int p = 0; p < profiles.length; p++) {
+			int exact = 0, same = 0;
+			double bias = 0, error = 0;
+			for (int i = 0; i < corpus.size(); i++) {
+				exact += counts[p][i] == corpus.get(i).speakers ? 1 : 0;
+				bias += counts[p][i] - corpus.get(i).speakers;
+				error += Math.abs(counts[p][i] - corpus.get(i).speakers);
+				same += counts[p][i] == counts[0][i] ? 1 : 0;
+			}
+			double ms = best[p] / 1e6 / minutes;
+			System.out.println(String.format(Locale.US, "%-9s %6.1f%% %+11.2f %13.2f %12.1f%% %7.0f %7.2fx %15.0f %16.0f", profiles[p].getName(),
+					100. * exact / corpus.size(), bias / corpus.size(), error / corpus.size(), 100. * same / corpus.size(), ms, best[0] / (double) best[p], 
+					yin[p] / minutes, mfcc[p] / minutes));
+		}
+		if (sink == -1) {
+			System.out.println();
+		}
+	}
+
+	private static FeatureExtractor extract(Recording r, FidelityProfile profile) throws Exception {
+		if (r.wavFile != null) {
+			return FeatureExtractor.extract(r.wavFile, new StreamingSegmenter(profile), profile);
+		}
+		FeatureExtractor extractor = new FeatureExtractor(RATE, new StreamingSegmenter(profile), profile);
+		extractor.write(r.pcm, r.pcm.length);
+		extractor.finish();
+		return extractor;
+	}
+
+	/** @return the recordings of the list, one wav file and its number of speakers per line */
+	private static List<Recording> read(String list) throws IOException {
+		List<Recording> corpus = new ArrayList<Recording>();
+		BufferedReader br = new BufferedReader(new FileReader(list));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				String[] v = line.split("\\s+");
+				File wav = new File(v[0]);
+				// 16bit mono after the 44 byte header
+				double seconds = (wav.length() - 44) / 2. / RATE;
+				corpus.add(new Recording(wav.getName(), Integer.parseInt(v[1]), null, wav.getPath(), seconds));
+			}
+		} finally {
+			br.close();
+		}
+		return corpus;
+	}
+
+	/** @return n conversations of one to four voices, each of the given length */
+	private static List<Recording> synthesize(int n, double seconds, Random random) {
+		List<Recording> corpus = new ArrayList<Recording>();
+		for (int i = 0; i < n; i++) {
+			int speakers = 1 + i % 4;
+			double[] f0 = new double[speakers];
+			double[] tract = new double[speakers];
+			double[] tilt = new double[speakers];
+			for (int s = 0; s < speakers; s++) {
+				boolean female = random.nextBoolean();
+				f0[s] = female ? 180 + 80 * random.nextDouble() : 95 + 55 * random.nextDouble();
+				// shorter vocal tracts raise all the formants
+				tract[s] = (female ? 1.12 : 0.92) + 0.1 * random.nextGaussian();
+				tilt[s] = 0.85 + 0.12 * random.nextDouble();
+			}
+			float[] x = new float[(int) (seconds * RATE)];
+			for (int j = 0; j < x.length; j++) {
+				x[j] = (float) (0.001 * random.nextGaussian());
+			}
+			// every speaker talks first once, then the turns go to a random other speaker
+			int t = 0, turn = 0, s = 0;
+			while (t < x.length) {
+				if (turn > 0) {
+					s = turn < speakers ? turn : speakers == 1 ? 0 : (s + 1 + random.nextInt(speakers - 1)) % speakers;
+				}
+				int length = (int) ((1 + 4 * random.nextDouble()) * RATE);
+				speak(x, t, Math.min(length, x.length - t), f0[s], tract[s], tilt[s], random);
+				t += length + (int) (0.2 * RATE + 0.6 * RATE * random.nextDouble());
+				turn++;
+			}
+			byte[] pcm = new byte[2 * x.length];
+			for (int j = 0; j < x.length; j++) {
+				int v = Math.round(Math.max(-1, Math.min(1, x[j])) * 32767);
+				pcm[2 * j] = (byte) v;
+				pcm[2 * j + 1] = (byte) (v >> 8);
+			}
+			corpus.add(new Recording("synthetic" + i, speakers, pcm, null, seconds));
+		}
+		return corpus;
+	}
+
+	/** add a turn of syllables, each a vowel of about 200ms, to the signal at a mean amplitude of 0.02 to 0.1 */
+	private static void speak(float[] x, int from, int length, double f0, double tract, double tilt, Random random) {
+		double[] turn = new double[length];
+		double phase = 0, glottal = 0;
+		double[][] state = new double[3][2];
+		double[] formants = new double[3];
+		int syllable = 0, left = 0;
+		double pitch = f0;
+		for (int i = 0; i < length; i++) {
+			if (left == 0) {
+				double[] vowel = VOWELS[random.nextInt(VOWELS.length)];
+				for (int k = 0; k < 3; k++) {
+					formants[k] = vowel[k] * tract;
+				}
+				left = (int) ((0.12 + 0.16 * random.nextDouble()) * RATE);
+				syllable = left;
+				pitch = f0 * (1 + 0.08 * random.nextGaussian());
+			}
+			// the pitch falls a little over the turn
+			double f = pitch * (1 - 0.1 * i / length);
+			phase += f / RATE;
+			double pulse = 0;
+			if (phase >= 1) {
+				phase -= 1;
+				pulse = 1;
+			}
+			// a one pole low pass sets the spectral tilt of the source
+			glottal = tilt * glottal + pulse;
+			double y = glottal;
+			for (int k = 0; k < 3; k++) {
+				double r = Math.exp(-Math.PI * (60 + 40 * k) / RATE);
+				double v = y + 2 * r * Math.cos(2 * Math.PI * Math.min(formants[k], 3900) / RATE) * state[k][0] - r * r * state[k][1];
+				state[k][1] = state[k][0];
+				state[k][0] = v;
+				y = v * (1 - r);
+			}
+			double envelope = Math.sin(Math.PI * (syllable - left) / syllable);
+			turn[i] = envelope * y;
+			left--;
+		}
+		double level = 0;
+		for (int i = 0; i < length; i++) {
+			level += Math.abs(turn[i]);
+		}
+		double gain = (0.02 + 0.08 * random.nextDouble()) * length / Math.max(level, 1e-12);
+		for (int i = 0; i < length; i++) {
+			x[from + i] += (float) (gain * turn[i]);
+		}
+	}
+
+}
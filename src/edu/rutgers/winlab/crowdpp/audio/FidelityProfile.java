@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.util.Locale;
+
+import edu.rutgers.winlab.crowdpp.util.Constants;
+
+/**
+ * The FidelityProfile class
+ * A named setting of the feature pipeline that trades accuracy for cost: the frame hop, the FFT size,
+ * the mel filters and cepstra of the MFCC chain, how often YIN runs and how much of a recording is processed.
+ * The service picks one from the battery with select(), FidelityBenchmark measures what each one costs and loses.
+ * A profile with other mel filters or cepstra than the calibration no longer matches the owner's profile
+ * and the calibrated thresholds, so the built-in profiles keep them.
+ */
+public class FidelityProfile {
+
+	/** the bounds in Hz and the overlap of the default mel filter bank */
+	private static final double MEL_LOWER = 188, MEL_UPPER = 6071, MEL_OVERLAP = 0.5;
+
+	/** every frame, the default MFCC chain and YIN on every voiced frame: the calibration setting */
+	public static final FidelityProfile FULL = new FidelityProfile("full", 1, 512, MFCC.DEFAULT_MELFILTER, 19, 1, 0);
+	/** no FFT padding and YIN on every other frame */
+	public static final FidelityProfile BALANCED = new FidelityProfile("balanced", 1, 256, MFCC.DEFAULT_MELFILTER, 19, 2, 0);
+	/** the balanced profile at a 32ms hop over the first two minutes only */
+	public static final FidelityProfile ECONOMY = new FidelityProfile("economy", 2, 256, MFCC.DEFAULT_MELFILTER, 19, 2, 120);
+
+	/** from the most to the least expensive */
+	public static final FidelityProfile[] PROFILES = {FULL, BALANCED, ECONOMY};
+
+	private final String name;
+	private final int frameStride, fftSize, cepstra, pitchStride;
+	private final String melFilter;
+	private final double maxSeconds;
+
+	/**
+	 * @param name the name in the logs and the diary
+	 * @param frameStride the frame hop in 16ms shifts, the window stays 32ms
+	 * @param fftSize the FFT size the 256 sample frames are zero padded to
+	 * @param melFilter the mel filter bank in the jstk format, see melFilter(int)
+	 * @param cepstra the number of cepstra selected, at most the number of filters
+	 * @param pitchStride YIN runs on every pitchStride-th frame above the energy gate, the others keep its pitch
+	 * @param maxSeconds the longest part of a recording processed, 0 for all of it
+	 */
+	public FidelityProfile(String name, int frameStride, int fftSize, String melFilter, int cepstra, int pitchStride, double maxSeconds) {
+		if (frameStride < 1 || pitchStride < 1 || cepstra < 1) {
+			throw new IllegalArgumentException("Profile " + name + " needs positive strides and cepstra");
+		}
+		this.name = name;
+		this.frameStride = frameStride;
+		this.fftSize = fftSize;
+		this.melFilter = melFilter;
+		this.cepstra = cepstra;
+		this.pitchStride = pitchStride;
+		this.maxSeconds = maxSeconds;
+	}
+
+	/** @return the jstk parameters of a mel filter bank over the default range with the given number of filters */
+	public static String melFilter(int filters) {
+		double lower = fHz2fmel(MEL_LOWER);
+		double upper = fHz2fmel(MEL_UPPER);
+		// n filters of width w overlapping by half span w * (1 + (n - 1) / 2), the jstk bank rounds the count up
+		double width = (upper - lower) / (1 + MEL_OVERLAP * (filters - 1)) * (1 + 1e-9);
+		return String.format(Locale.US, "%.0f,%.0f,%.5f,%.1f", MEL_LOWER, MEL_UPPER, width, MEL_OVERLAP);
+	}
+
+	private static double fHz2fmel(double fHz) {
+		return 1127. * Math.log(1. + fHz / 700.);
+	}
+
+	/**
+	 * The full profile while charging or above Constants.fidelity_full_lower percent, the economy profile below.
+	 * The service does not count below Constants.service_battery_lower percent, so economy counts between the two.
+	 * @return the profile for the battery level in percent
+	 */
+	public static FidelityProfile select(float battery, boolean charging) {
+		if (charging || battery >= Constants.fidelity_full_lower) {
+			return FULL;
+		}
+		return ECONOMY;
+	}
+
+	/** @return the built-in profile of the name, null if there is none */
+	public static FidelityProfile forName(String name) {
+		for (FidelityProfile profile : PROFILES) {
+			if (profile.name.equals(name)) {
+				return profile;
+			}
+		}
+		return null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getFrameStride() {
+		return frameStride;
+	}
+
+	/** @return the time between two frames in seconds */
+	public double getFrameShift() {
+		return frameStride * FeatureIndex.FRAME_SHIFT;
+	}
+
+	public int getFftSize() {
+		return fftSize;
+	}
+
+	public String getMelFilter() {
+		return melFilter;
+	}
+
+	/** @return the selection of the cepstra in the jstk format */
+	public String getSelection() {
+		return cepstra == 1 ? "0" : "0-" + (cepstra - 1);
+	}
+
+	public int getCepstra() {
+		return cepstra;
+	}
+
+	public int getPitchStride() {
+		return pitchStride;
+	}
+
+	public double getMaxSeconds() {
+		return maxSeconds;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "%s (hop %d ms, FFT %d, %s, %d cepstra, YIN 1/%d, max %s)", name,
+				frameStride * 16, fftSize, melFilter, cepstra, pitchStride, maxSeconds > 0 ? maxSeconds + " s" : "all");
+	}
+
+}
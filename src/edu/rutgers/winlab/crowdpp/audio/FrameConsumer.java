@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+/**
+ * The FrameConsumer interface
+ * Receives the frames of a SharedFramer. Every frame is handed out raw and windowed,
+ * only the zero padded frames at the end may come in one form only.
+ */
+public interface FrameConsumer {
+
+	/** @param frame the samples of the frame as floats in [-1,1], like AudioFloatInputStream reads them */
+	void onRawFrame(float[] frame);
+
+	/** @param frame the DC free and Hamming windowed samples, like de.fau.cs.jstk.framed.Window reads them */
+	void onWindowedFrame(double[] frame);
+
+}
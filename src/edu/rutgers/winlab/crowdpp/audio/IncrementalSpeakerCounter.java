@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.rutgers.winlab.crowdpp.util.Constants;
+import edu.rutgers.winlab.crowdpp.util.Distances;
+import edu.rutgers.winlab.crowdpp.util.Log;
+
+/**
+ * The IncrementalSpeakerCounter class
+ * The admission step of the speaker counting, one segment at a time: every segment is matched against
+ * the nearest enrolled speaker (if any), then against the admitted speakers, and is merged, admitted as
+ * a new speaker or left out. SpeakerCount runs its algorithms through it on the pre-clustered segments.
+ * <p>
+ * While recording, offer() takes the segments as they are closed: neighbors that may merge are merged
+ * on the fly (in one greedy pass instead of NeighborMerger's repeated sweeps), and the running count tells how long
+ * it has not changed, so the recording can stop early once the count is stable.
+ */
+public class IncrementalSpeakerCounter {
+
+	/** classify() results besides the speaker to merge into */
+	private static final int NEW = -1;
+	private static final int NONE = -2;
+
+	/** the enrolled speakers first, then the admitted ones */
+	private final List<SpeakerCluster> speakers = new ArrayList<SpeakerCluster>();
+	private final int enrolled;
+	/** the frame count of every enrolled speaker before the test data */
+	private final int[] enrolledCounts;
+	/** null if there are no enrolled speakers or the distance is not the cosine */
+	private final EnrolleeIndex index;
+	/** the segments merged into the owner, null if not collected */
+	private final List<SpeakerCluster> owner;
+
+	private double length = 0;
+	private int segments = 0;
+
+	/** the last offered segment, it may still merge with the next one */
+	private SpeakerCluster pending;
+	/** the end time of the last offered segment and of the last count change, in seconds */
+	private double time = 0;
+	private double changeTime = 0;
+	private int count = 0;
+
+	/** count without enrolled speakers, like SpeakerCount.unsupervisedAlgorithm */
+	public IncrementalSpeakerCounter() {
+		this(new ArrayList<SpeakerCluster>(), null);
+	}
+
+	/**
+	 * Count with the enrolled speakers (copied), the owner first, like SpeakerCount.enrolledAlgorithm.
+	 * The segments merged into the owner are added to owner unless it is null.
+	 */
+	public IncrementalSpeakerCounter(List<SpeakerCluster> enrolled, List<SpeakerCluster> owner) {
+		this.enrolled = enrolled.size();
+		this.enrolledCounts = new int[enrolled.size()];
+		this.owner = owner;
+		// the cosine index finds the nearest enrolled speaker, any other distance is searched one by one
+		index = enrolled.size() > 0 && SpeakerCount.getDistanceFunction() == Distances.COSINE 
+				? new EnrolleeIndex(enrolled.get(0).getDimension()) : null;
+		for (int e = 0; e < enrolled.size(); e++) {
+			SpeakerCluster c = enrolled.get(e);
+			speakers.add(c.copy());
+			enrolledCounts[e] = c.getCount();
+			if (index != null) {
+				index.add(c.getMean(), c.getPitch());
+			}
+		}
+	}
+
+	/**
+	 * Match the segment against the enrolled and the admitted speakers.
+	 * @return the speaker it merges into, NEW if it is a new speaker, NONE if it is left out
+	 */
+	private int classify(SpeakerCluster tst, boolean log) {
+		boolean diff_enrolled = true;
+		// the nearest enrolled speaker, different genders are different speakers
+		int e = -1;
+		if (enrolled > 0) {
+			e = index != null ? index.nearest(tst.getMean(), tst.getPitch()) : nearestEnrolled(tst);
+		}
+		if (e >= 0) {
+			double mfcc_dist = SpeakerCount.getDistance(tst, speakers.get(e));
+			if (log) {
+				Log.i("MFCC distance", segments + "," + e + "," + mfcc_dist);
+				Log.i("Pitch information", segments + "," + tst.getPitch() + "," + e + "," + speakers.get(e).getPitch());
+			}
+			// mfcc distance is smaller than the threshold
+			if (!(mfcc_dist >= Constants.mfcc_dist_diff_semi)) {
+				diff_enrolled = false;
+				if (mfcc_dist <= Constants.mfcc_dist_same_semi && SpeakerCount.genderDecision(tst.getPitch(), speakers.get(e).getPitch()) == 1) {
+					return e;
+				}
+			}
+		}
+		int diff_count = 0;
+		for (int j = enrolled; j < speakers.size(); j++) {
+			// compare it with the each admitted speaker j
+			double mfcc_dist = SpeakerCount.getDistance(tst, speakers.get(j));
+			if (log) {
+				Log.i("MFCC distance", segments + "," + j + "," + mfcc_dist);
+				Log.i("Pitch information", segments + "," + tst.getPitch() + "," + j + "," + speakers.get(j).getPitch());
+			}
+			// different gender
+			if (SpeakerCount.genderDecision(tst.getPitch(), speakers.get(j).getPitch()) == 0) { 
+				diff_count++;
+			} 
+			// mfcc distance is larger than a threshold
+			else if (mfcc_dist >= Constants.mfcc_dist_diff_un) {
+				diff_count++;
+			}
+			// same speaker
+			else if (mfcc_dist <= Constants.mfcc_dist_same_un && SpeakerCount.genderDecision(tst.getPitch(), speakers.get(j).getPitch()) == 1) {
+				return j;
+			}
+		}
+		// a new speaker if different from all the enrolled and admitted speakers.
+		return diff_enrolled && diff_count == speakers.size() - enrolled ? NEW : NONE;
+	}
+
+	/** @return the enrolled speaker with the smallest distance not of the other gender, -1 if there is none */
+	private int nearestEnrolled(SpeakerCluster c) {
+		int best = -1;
+		double best_dist = Double.POSITIVE_INFINITY;
+		for (int e = 0; e < enrolled; e++) {
+			if (SpeakerCount.genderDecision(c.getPitch(), speakers.get(e).getPitch()) == 0) {
+				continue;
+			}
+			double mfcc_dist = SpeakerCount.getDistance(c, speakers.get(e));
+			if (best < 0 || mfcc_dist < best_dist) {
+				best = e;
+				best_dist = mfcc_dist;
+			}
+		}
+		return best;
+	}
+
+	/** add the next pre-clustered segment */
+	public void add(SpeakerCluster tst) {
+		int j = classify(tst, true);
+		if (j >= 0) {
+			speakers.get(j).merge(tst); // merge
+			if (j < enrolled && index != null) {
+				index.update(j, speakers.get(j).getMean());
+			}
+			if (j == 0 && enrolled > 0 && owner != null) {
+				owner.add(tst);
+			}
+			Log.i("Merging", j + "," + tst.getCount());
+		}
+		else if (j == NEW) {
+			// admit as a new speaker
+			speakers.add(tst.copy());
+			Log.i("New speaker", Integer.toString(speakers.size() - 1));
+		}
+		length += tst.getCount();
+		segments++;
+	}
+
+	/**
+	 * Offer the next voiced segment while recording, it ends at the given time in seconds.
+	 * It is held back until the next one shows whether they merge as neighbors.
+	 */
+	public void offer(SpeakerCluster tst, double time) {
+		if (pending != null && SpeakerCount.genderDecision(pending.getPitch(), tst.getPitch()) == 1
+				&& SpeakerCount.getDistance(pending, tst) <= Constants.mfcc_dist_same_un) {
+			pending.merge(tst);
+			pending.setPitch((pending.getPitch() + tst.getPitch()) / 2);
+		}
+		else {
+			if (pending != null) {
+				add(pending);
+			}
+			pending = tst.copy();
+		}
+		advance(time);
+	}
+
+	/** the recording went on until the given time in seconds without a voiced segment */
+	public void advance(double time) {
+		this.time = time;
+		int c = getCount();
+		if (c != count) {
+			count = c;
+			changeTime = time;
+		}
+	}
+
+	/** add the segment held back by offer() */
+	public void flush() {
+		if (pending != null) {
+			add(pending);
+			pending = null;
+		}
+	}
+
+	/** @return the number of speakers, counting the held back segment where it would go */
+	public int getCount() {
+		int c = speakers.size();
+		boolean[] spoke = new boolean[enrolled];
+		for (int e = 0; e < enrolled; e++) {
+			spoke[e] = speakers.get(e).getCount() != enrolledCounts[e];
+		}
+		if (pending != null) {
+			int j = classify(pending, false);
+			if (j == NEW) {
+				c++;
+			}
+			else if (j >= 0 && j < enrolled) {
+				spoke[j] = true;
+			}
+		}
+		// don't count an enrolled speaker if there is no voice from them in the test data
+		for (int e = 0; e < enrolled; e++) {
+			if (!spoke[e]) {
+				c--;
+			}
+		}
+		return c;
+	}
+
+	/** @return the seconds since the count last changed, 0 before the first voiced segment */
+	public double getStableSeconds() {
+		return isVoiced() ? time - changeTime : 0;
+	}
+
+	/** @return true if there was a voiced segment and the count has not changed for the given seconds */
+	public boolean isStable(double seconds) {
+		return isVoiced() && time - changeTime >= seconds;
+	}
+
+	private boolean isVoiced() {
+		return segments > 0 || pending != null;
+	}
+
+	/** @return the speaker count, followed by the speech percentage of every enrolled speaker */
+	public double[] getResult() {
+		flush();
+		double[] rv = new double[1 + enrolled];
+		rv[0] = getCount();
+		for (int e = 0; e < enrolled; e++) {
+			Log.i("Training length", Integer.toString(enrolledCounts[e]));
+			Log.i("Testing length", Integer.toString(speakers.get(e).getCount()));
+			rv[1 + e] = 100 * (double) (speakers.get(e).getCount() - enrolledCounts[e]) / length;
+			Log.i("Speech percentage", Double.toString(rv[1 + e]));
+		}
+		return rv;
+	}
+
+	/** @return the enrolled speakers first, then the admitted ones */
+	public List<SpeakerCluster> getSpeakers() {
+		return speakers;
+	}
+
+}
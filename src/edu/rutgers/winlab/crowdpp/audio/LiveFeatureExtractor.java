@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import edu.rutgers.winlab.crowdpp.util.Constants;
+import edu.rutgers.winlab.crowdpp.util.Log;
+
+/**
+ * The LiveFeatureExtractor class
+ * Computes the YIN pitch and the MFCC features directly from the recorded PCM buffers,
+ * so the recording does not need to be written to a wav file and read back twice.
+ * The buffers go through a FeatureExtractor on a worker thread, framed like the file based extraction.
+ * When segmenting, only the voiced segments are kept instead of all the frames of the recording.
+ * At most Constants.live_queue_buffers buffers wait for the worker, the buffers beyond are dropped and counted,
+ * so a worker that lags behind the recording does not hold the whole recording in memory.
+ */
+public class LiveFeatureExtractor implements AudioRecorder.OnBufferReadyListener {
+
+	private static final String TAG = "LiveFeatureExtractor";
+
+	/** the buffers are processed in order off the recording thread */
+	private final ThreadPoolExecutor worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, 
+			new ArrayBlockingQueue<Runnable>(Math.max(1, Constants.live_queue_buffers)));
+
+	/** set by finish(), later buffers are ignored */
+	private boolean closed = false;
+	/** set once the worker has processed every buffer, the features are only read after that */
+	private volatile boolean complete = false;
+	/** the buffers dropped while the worker queue was full */
+	private int dropped = 0;
+
+	/** null until the recording starts or if the feature chain cannot be built, only touched by the worker until complete */
+	private FeatureExtractor extractor;
+
+	private final boolean segmenting;
+	/** told about every segment while segmenting, null for none */
+	private final StreamingSegmenter.Listener listener;
+	private final FidelityProfile profile;
+
+	/** keep all the features */
+	public LiveFeatureExtractor() {
+		this(false);
+	}
+
+	/** segment the frames as they come instead of keeping them if segmenting is set */
+	public LiveFeatureExtractor(boolean segmenting) {
+		this(segmenting, null);
+	}
+
+	/** segment the frames as they come if segmenting is set, the listener is called on the worker thread for every segment */
+	public LiveFeatureExtractor(boolean segmenting, StreamingSegmenter.Listener listener) {
+		this(segmenting, listener, FidelityProfile.FULL);
+	}
+
+	/** extract at the fidelity of the profile */
+	public LiveFeatureExtractor(boolean segmenting, StreamingSegmenter.Listener listener, FidelityProfile profile) {
+		this.segmenting = segmenting;
+		this.listener = listener;
+		this.profile = profile;
+		// the queued tasks are only taken by a running thread
+		worker.prestartAllCoreThreads();
+	}
+
+	@Override
+	public synchronized void onStart(final int sampleRate) {
+		if (closed) {
+			return;
+		}
+		worker.execute(new Runnable() {
+			public void run() {
+				try {
+					StreamingSegmenter segmenter = null;
+					if (segmenting) {
+						segmenter = new StreamingSegmenter(profile);
+						segmenter.setListener(listener);
+					}
+					extractor = new FeatureExtractor(sampleRate, segmenter, profile);
+				} catch (Exception e) {
+					Log.e(TAG, "Cannot initialize the feature chain");
+					e.printStackTrace();
+					extractor = null;
+				}
+			}
+		});
+	}
+
+	@Override
+	public synchronized void onBufferReady(byte[] buffer, final int length) {
+		if (closed) {
+			return;
+		}
+		// the recorder reuses its buffer
+		if (worker.getQueue().remainingCapacity() == 0) {
+			dropped++;
+			return;
+		}
+		final byte[] copy = new byte[length];
+		System.arraycopy(buffer, 0, copy, 0, length);
+		try {
+			worker.execute(new Runnable() {
+				public void run() {
+					if (extractor != null) {
+						extractor.write(copy, length);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			dropped++;
+		}
+	}
+
+	/**
+	 * Wait until all recorded buffers are processed; later buffers are ignored.
+	 * The trailing windows are zero padded for the MFCC features like the jstk window does.
+	 * @return false if the worker did not finish within a minute, the features are then not available
+	 */
+	public boolean finish() {
+		synchronized (this) {
+			if (!closed) {
+				closed = true;
+				try {
+					// waits for room, the last task must not be dropped
+					worker.getQueue().put(new Runnable() {
+						public void run() {
+							if (extractor != null) {
+								extractor.finish();
+							}
+						}
+					});
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				worker.shutdown();
+				if (dropped > 0) {
+					Log.w(TAG, "Dropped " + dropped + " buffers, the worker lagged behind the recording");
+				}
+			}
+		}
+		try {
+			// the termination orders the worker's writes before the reads of the features
+			if (worker.awaitTermination(1, TimeUnit.MINUTES)) {
+				complete = true;
+			}
+			else {
+				Log.e(TAG, "The feature extraction did not finish in time");
+				worker.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return complete;
+	}
+
+	/** @return the number of buffers dropped because the worker lagged behind */
+	public synchronized int getDroppedBufferCount() {
+		return dropped;
+	}
+
+	/** @return true if only the segments are kept */
+	public boolean isSegmenting() {
+		return segmenting;
+	}
+
+	/** @return the voiced segments like SpeakerCount.segmentation, null if there are none, if not segmenting or if finish() failed */
+	public List<SpeakerCluster> getSegments() {
+		return complete && extractor != null && extractor.isSegmenting() ? extractor.getSegmenter().finish() : null;
+	}
+
+	/** @return the MFCC features, one row per frame, none if finish() failed */
+	public double[][] getMfcc() {
+		return complete && extractor != null ? extractor.getMfcc() : new double[0][];
+	}
+
+	/** @return the pitch in Hz (-1 if unvoiced), one row per frame, none if finish() failed */
+	public double[][] getPitch() {
+		return complete && extractor != null ? extractor.getPitch() : new double[0][];
+	}
+
+}
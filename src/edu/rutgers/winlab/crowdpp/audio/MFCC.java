@@ -23,6 +23,7 @@
 package edu.rutgers.winlab.crowdpp.audio;
 
 import edu.rutgers.winlab.crowdpp.util.FileProcess;
+import edu.rutgers.winlab.crowdpp.util.Log;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -30,7 +31,6 @@ import java.io.FileReader;
 import java.util.LinkedList;
 
 import android.os.Environment;
-import android.util.Log;
 
 import de.fau.cs.jstk.app.Convert;
 import de.fau.cs.jstk.app.Mfcc;
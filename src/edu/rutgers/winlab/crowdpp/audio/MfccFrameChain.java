@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fau.cs.jstk.framed.DCT;
+import de.fau.cs.jstk.framed.FFT;
+import de.fau.cs.jstk.framed.FilterBank;
+import de.fau.cs.jstk.framed.Selection;
+import de.fau.cs.jstk.framed.SimulatedFrameSource;
+import de.fau.cs.jstk.io.FrameSource;
+
+/**
+ * The MfccFrameChain class
+ * Runs the windowed frames of a SharedFramer through the feature chain of MFCC.writeFile
+ * (power spectrum, mel filter bank, DCT, selection with short time energy) and collects the MFCC rows,
+ * or hands every row to a listener instead. Every frame goes through the chain on its own, so the
+ * rows may also be computed later for selected frames only.
+ */
+public class MfccFrameChain implements FrameConsumer {
+
+	/** receives the MFCC rows as they are computed */
+	public interface Listener {
+		/** the row is reused for the next frame */
+		void onMfcc(double[] mfcc);
+	}
+
+	private final SimulatedFrameSource frames;
+	private final FrameSource chain;
+	private final double[] mfccFrame;
+	private final int frameSize;
+
+	private final List<double[]> mfcc = new ArrayList<double[]>();
+	/** null if the rows are collected */
+	private final Listener listener;
+
+	public MfccFrameChain(int sampleRate, int frameSize) throws Exception {
+		this(sampleRate, frameSize, null);
+	}
+
+	/** the rows go to the listener and are not collected, unless it is null */
+	public MfccFrameChain(int sampleRate, int frameSize, Listener listener) throws Exception {
+		this(sampleRate, frameSize, listener, FidelityProfile.FULL);
+	}
+
+	/** the FFT size, mel filters and cepstra of the profile */
+	public MfccFrameChain(int sampleRate, int frameSize, Listener listener, FidelityProfile profile) throws Exception {
+		this.listener = listener;
+		this.frameSize = frameSize;
+		// the simulated source needs one frame to know the frame size, drop it again
+		frames = new SimulatedFrameSource(new double[][] { new double[frameSize] });
+		frames.read(new double[frameSize]);
+		FFT fft = new FFT(frames, true, true, 0, profile.getFftSize());
+		frames.setSampleInfo(sampleRate, 2 * (fft.getFrameSize() - 1));
+		FilterBank melfilter = FilterBank.generateMelFilterBank(fft, profile.getMelFilter(), null);
+		DCT dct = new DCT(melfilter, true);
+		Selection selection = Selection.create(dct, profile.getSelection());
+		selection.setShortTimeEnergy(true);
+		chain = selection;
+		mfccFrame = new double[chain.getFrameSize()];
+	}
+
+	@Override
+	public void onRawFrame(float[] frame) {
+	}
+
+	@Override
+	public void onWindowedFrame(double[] frame) {
+		double[] row = compute(frame);
+		if (row != null) {
+			if (listener != null) {
+				listener.onMfcc(row);
+			}
+			else {
+				mfcc.add(row.clone());
+			}
+		}
+	}
+
+	/** @return the MFCC row of the windowed frame, reused for the next frame; null if the chain fails */
+	public double[] compute(double[] frame) {
+		frames.appendFrame(frame);
+		try {
+			if (chain.read(mfccFrame)) {
+				return mfccFrame;
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/** @return the number of samples of the windowed frames */
+	public int getFrameSize() {
+		return frameSize;
+	}
+
+	/** @return the MFCC features, one row per frame */
+	public double[][] getMfcc() {
+		return mfcc.toArray(new double[mfcc.size()][]);
+	}
+
+}
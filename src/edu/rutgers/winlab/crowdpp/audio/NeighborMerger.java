@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.rutgers.winlab.crowdpp.util.Constants;
+
+/**
+ * The NeighborMerger class
+ * Pre-clusters neighboring segments like the original sweeps: every pass goes from left to right and
+ * a segment absorbs its right neighbors while the distance is within mfcc_dist_same_un and the gender
+ * is the same, the passes repeat until nothing merges. The segments form a doubly linked list, so a merge
+ * is O(1) instead of ArrayList.remove, and a pass after the first only visits the pairs whose right
+ * segment changed in the pass before; every other pair was already tried with the same clusters and failed.
+ * The merges therefore happen in the same order as in the sweeps and give the same clusters.
+ */
+public class NeighborMerger {
+
+	private static class Node {
+		final SpeakerCluster cluster;
+		Node prev, next;
+		boolean removed = false;
+
+		Node(SpeakerCluster cluster) {
+			this.cluster = cluster;
+		}
+	}
+
+	private NeighborMerger() {}
+
+	/**
+	 * Merge the neighboring segments in place, the merged pitch is the average of both.
+	 * @return the remaining clusters in their original order
+	 */
+	public static List<SpeakerCluster> merge(List<SpeakerCluster> segments) {
+		if (segments.size() < 2) {
+			return segments;
+		}
+		Node head = null, tail = null;
+		for (SpeakerCluster segment : segments) {
+			Node node = new Node(segment);
+			if (tail == null) {
+				head = node;
+			}
+			else {
+				tail.next = node;
+				node.prev = tail;
+			}
+			tail = node;
+		}
+
+		// the first pass tries every pair, from the left
+		List<Node> starts = new ArrayList<Node>();
+		for (Node node = head; node.next != null; node = node.next) {
+			starts.add(node);
+		}
+		while (!starts.isEmpty()) {
+			// the segments that absorbed a neighbor in this pass, from left to right
+			List<Node> changed = new ArrayList<Node>();
+			for (Node p : starts) {
+				if (p.removed) {
+					continue;
+				}
+				boolean absorbed = false;
+				while (p.next != null && mayMerge(p.cluster, p.next.cluster)) {
+					Node q = p.next;
+					p.cluster.merge(q.cluster);
+					p.cluster.setPitch((p.cluster.getPitch() + q.cluster.getPitch()) / 2);
+					q.removed = true;
+					p.next = q.next;
+					if (q.next != null) {
+						q.next.prev = p;
+					}
+					absorbed = true;
+				}
+				if (absorbed) {
+					changed.add(p);
+				}
+			}
+			// only the pairs ending in a changed segment may merge in the next pass
+			starts = new ArrayList<Node>();
+			for (Node node : changed) {
+				if (node.prev != null) {
+					starts.add(node.prev);
+				}
+			}
+		}
+
+		List<SpeakerCluster> merged = new ArrayList<SpeakerCluster>();
+		for (Node node = head; node != null; node = node.next) {
+			merged.add(node.cluster);
+		}
+		return merged;
+	}
+
+	private static boolean mayMerge(SpeakerCluster a, SpeakerCluster b) {
+		return SpeakerCount.getDistance(a, b) <= Constants.mfcc_dist_same_un && SpeakerCount.genderDecision(a.getPitch(), b.getPitch()) == 1;
+	}
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import edu.rutgers.winlab.crowdpp.util.Constants;
+import edu.rutgers.winlab.crowdpp.util.FeatureFileWriter;
+
+/**
+ * The PitchTracker class
+ * YIN pitch tracking with its own buffers, so several trackers can run in parallel.
+ * The methods of one tracker are synchronized, a tracker may be shared but then runs one track at a time.
+ * The pitch is -1 for the frames without a detected pitch.
+ */
+public class PitchTracker {
+
+	/** 32ms window at 8kHz, shifted by half a window */
+	public static final float DEFAULT_SAMPLE_RATE = 8000;
+	public static final int DEFAULT_BUFFER_SIZE = 256;
+
+	private final Yin yin;
+	private final float sampleRate;
+	private final int bufferSize;
+	private final int overlapSize;
+	private final float[] frame;
+
+	public PitchTracker() {
+		this(DEFAULT_SAMPLE_RATE, DEFAULT_BUFFER_SIZE, Constants.yin_fft);
+	}
+
+	/** @param fftDifference use the FFT based YIN difference function */
+	public PitchTracker(float sampleRate, int bufferSize, boolean fftDifference) {
+		this.yin = new Yin(sampleRate, bufferSize, fftDifference);
+		this.sampleRate = sampleRate;
+		this.bufferSize = bufferSize;
+		this.overlapSize = bufferSize / 2;
+		this.frame = new float[bufferSize];
+	}
+
+	/** @return the number of samples of one frame */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/** @return the number of frames per second */
+	public float getFrameRate() {
+		return sampleRate / (bufferSize - overlapSize);
+	}
+
+	/** @return the pitch in Hz of a single frame of getBufferSize() samples */
+	public synchronized float getPitch(float[] frame) {
+		return yin.getPitch(frame);
+	}
+
+	/** @return the pitch track of the samples, one value per complete frame with half a window shift */
+	public synchronized float[] getPitchTrack(float[] samples) {
+		int frames = samples.length < bufferSize ? 0 : (samples.length - bufferSize) / (bufferSize - overlapSize) + 1;
+		float[] track = new float[frames];
+		for (int i = 0; i < frames; i++) {
+			System.arraycopy(samples, i * (bufferSize - overlapSize), frame, 0, bufferSize);
+			track[i] = yin.getPitch(frame);
+		}
+		return track;
+	}
+
+	/**
+	 * Track the pitch of the whole stream, framed like the original Yin.processStream:
+	 * the last frame is computed as soon as the last read returns any samples.
+	 * @return the pitch track
+	 */
+	public synchronized float[] processStream(AudioFloatInputStream afis) throws IOException {
+		int bufferStepSize = bufferSize - overlapSize;
+		float[] track = new float[1024];
+		int frames = 0;
+
+		// read full buffer
+		boolean hasMoreFloats = afis.read(frame, 0, bufferSize) != -1;
+		while (hasMoreFloats) {
+			if (frames == track.length) {
+				float[] grown = new float[track.length * 2];
+				System.arraycopy(track, 0, grown, 0, frames);
+				track = grown;
+			}
+			track[frames++] = yin.getPitch(frame);
+			// slide buffer with predefined overlap
+			System.arraycopy(frame, overlapSize, frame, 0, bufferStepSize);
+			hasMoreFloats = afis.read(frame, overlapSize, bufferStepSize) != -1;
+		}
+
+		float[] rv = new float[frames];
+		System.arraycopy(track, 0, rv, 0, frames);
+		return rv;
+	}
+
+	/** @return the pitch track of the 8kHz 16bit wav file */
+	public float[] processFile(String wavFile) throws IOException {
+		InputStream is = new FileInputStream(wavFile);
+		try {
+			return processStream(AudioFloatInputStream.getInputStream(is));
+		} finally {
+			is.close();
+		}
+	}
+
+	/** @return the pitch track as matrix with one row per frame, as FileProcess.readFile returns it */
+	public static double[][] toMatrix(float[] track) {
+		double[][] dat = new double[track.length][1];
+		for (int i = 0; i < track.length; i++) {
+			dat[i][0] = track[i];
+		}
+		return dat;
+	}
+
+	/** append the pitch track to the text file, one value per line like the original YIN output */
+	public static void writeText(String filename, float[] track) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename, true), "ISO-8859-1"), 64 * 1024);
+		try {
+			for (int i = 0; i < track.length; i++) {
+				writer.write(Float.toString(track[i]));
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/** write the pitch track into a binary feature file without MFCC frames, see FeatureFile */
+	public void writeBinary(String filename, float[] track) throws IOException {
+		FeatureFileWriter.write(filename, getFrameRate(), new double[0][], toMatrix(track));
+	}
+
+}
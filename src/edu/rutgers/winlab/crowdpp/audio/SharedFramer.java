@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.fau.cs.jstk.framed.HammingWindow;
+import de.fau.cs.jstk.sampled.DCShiftRemover;
+
+/**
+ * The SharedFramer class
+ * Decodes 16bit little endian PCM once and cuts it into 32ms frames with 16ms shift, handing each frame
+ * to all consumers both raw (for YIN) and windowed (for the MFCC chain), so the features stay frame aligned.
+ * The framing follows the jstk Hamming window for the windowed frames and the YIN stream reader for the raw ones,
+ * including the padding of the last frames. The PCM is read from the first byte on, like the file based extraction.
+ * With a stride above 1 only every stride-th frame is handed on, the hop grows and the window stays.
+ */
+public class SharedFramer {
+
+	private final List<FrameConsumer> consumers = new ArrayList<FrameConsumer>();
+
+	/** window length and shift in samples */
+	private final int nsw, nss;
+	/** every stride-th frame is emitted, counted from the first */
+	private final int stride;
+	private int frame = 0;
+
+	/** samples of the first window, then of the current shift */
+	private int fill = 0;
+	private boolean first = true;
+
+	/** ring buffer (DC removed per shift) and Hamming weights for the windowed frames */
+	private final double[] rb, rbHelper, weights, windowed;
+	private int cind = 0;
+
+	/** sliding window of raw samples */
+	private final float[] rawFrame, rawHelper;
+
+	/** an odd byte left over from the last write */
+	private int pendingByte = -1;
+
+	public SharedFramer(int sampleRate) {
+		this(sampleRate, 1);
+	}
+
+	/** hand on every stride-th frame only */
+	public SharedFramer(int sampleRate, int stride) {
+		this.stride = stride;
+		nsw = sampleRate * 32 / 1000;
+		nss = sampleRate * 16 / 1000;
+		rb = new double[nsw];
+		rbHelper = new double[nss];
+		windowed = new double[nsw];
+		weights = HammingWindow.weights(nsw);
+		rawFrame = new float[nsw];
+		rawHelper = new float[nss];
+	}
+
+	public void addConsumer(FrameConsumer consumer) {
+		consumers.add(consumer);
+	}
+
+	/** @return the window length in samples */
+	public int getFrameSize() {
+		return nsw;
+	}
+
+	/** frame the 16bit little endian samples of the buffer */
+	public void write(byte[] buffer, int length) {
+		int i = 0;
+		if (pendingByte >= 0 && length > 0) {
+			write((short) (pendingByte | (buffer[0] << 8)));
+			pendingByte = -1;
+			i = 1;
+		}
+		for (; i + 1 < length; i += 2) {
+			write((short) ((buffer[i] & 0xff) | (buffer[i+1] << 8)));
+		}
+		if (i < length) {
+			pendingByte = buffer[i] & 0xff;
+		}
+	}
+
+	/** frame one sample */
+	public void write(short s) {
+		if (first) {
+			rb[fill] = toDouble(s);
+			rawFrame[fill] = s * 3.051851E-05F;
+			if (++fill == nsw) {
+				first = false;
+				fill = 0;
+				emit(true, true);
+			}
+		}
+		else {
+			rbHelper[fill] = toDouble(s);
+			rawHelper[fill] = s * 3.051851E-05F;
+			if (++fill == nss) {
+				shift(nss);
+				fill = 0;
+				emit(true, true);
+			}
+		}
+	}
+
+	/** frame the whole stream and flush */
+	public void process(InputStream is) throws IOException {
+		byte[] buffer = new byte[64 * 1024];
+		int n;
+		while ((n = is.read(buffer)) > 0) {
+			write(buffer, n);
+		}
+		flush();
+	}
+
+	/** frame the whole file and flush */
+	public void processFile(String filename) throws IOException {
+		InputStream is = new FileInputStream(filename);
+		try {
+			process(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	/** same scaling as the jstk audio reader */
+	private static double toDouble(short s) {
+		double d = s / 32767.;
+		return d < -1. ? -1. : d;
+	}
+
+	/** move the next n samples of the shift into the window, pad the rest with zeros */
+	private void shift(int n) {
+		DCShiftRemover.removeDC(rbHelper, n);
+		for (int i = 0; i < nss; ++i) {
+			rb[(cind + i) % nsw] = i < n ? rbHelper[i] : 0.;
+		}
+		cind = (cind + nss) % nsw;
+		System.arraycopy(rawFrame, nss, rawFrame, 0, nsw - nss);
+		System.arraycopy(rawHelper, 0, rawFrame, nsw - nss, nss);
+	}
+
+	/** hand the current window to the consumers */
+	private void emit(boolean raw, boolean window) {
+		if (frame++ % stride != 0) {
+			return;
+		}
+		if (window) {
+			for (int i = 0; i < nsw; ++i) {
+				windowed[i] = rb[(cind + i) % nsw] * weights[i];
+			}
+		}
+		for (FrameConsumer consumer : consumers) {
+			if (raw) {
+				consumer.onRawFrame(rawFrame);
+			}
+			if (window) {
+				consumer.onWindowedFrame(windowed);
+			}
+		}
+	}
+
+	/**
+	 * Emit the zero padded trailing frames, as the file based extraction reads them.
+	 * The framer starts over afterwards.
+	 */
+	public void flush() {
+		// the stream readers drop a trailing odd byte
+		pendingByte = -1;
+		if (first && fill == 0) {
+			return;
+		}
+		if (first) {
+			// the first window is zero padded already
+			emit(true, true);
+			fill = 0;
+		}
+		// YIN takes the partial shift, the jstk window one more zero padded shift
+		boolean partial = fill > 0;
+		// the YIN stream reader leaves the rest of the last raw frame as it was
+		System.arraycopy(rawFrame, nsw - nss + fill, rawHelper, fill, nss - fill);
+		shift(fill);
+		emit(partial, nss - fill < nsw);
+
+		// start over
+		first = true;
+		fill = 0;
+		cind = 0;
+		frame = 0;
+		Arrays.fill(rb, 0.);
+		Arrays.fill(rawFrame, 0f);
+	}
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * The SpeakerCluster class
+ * Sufficient statistics of the MFCC frames of one speaker: the frame count, the per dimension sum
+ * and the per dimension sum of squared deviations from the mean, plus the mean pitch.
+ * Merging two clusters is O(d) instead of concatenating all their frames.
+ */
+public class SpeakerCluster {
+
+	private int count;
+	private final double[] sum;
+	/** sum of (x - mean)^2, merged with the pairwise update of Chan et al. */
+	private final double[] m2;
+	private double pitch;
+
+	/** the mean and the standard deviation, computed lazily after a merge */
+	private double[] mean, sigma;
+
+	/** cluster of the frames from (inclusive) to to (exclusive), using the first dim columns */
+	public SpeakerCluster(double[][] mfcc, int from, int to, int dim, double pitch) {
+		this.count = to - from;
+		this.sum = new double[dim];
+		this.m2 = new double[dim];
+		this.pitch = pitch;
+		// same summation order as Maths.getColMean, so an unmerged cluster gives the same mean
+		for (int i = from; i < to; i++) {
+			for (int j = 0; j < dim; j++) {
+				sum[j] += mfcc[i][j];
+			}
+		}
+		double[] mu = getMean();
+		for (int i = from; i < to; i++) {
+			for (int j = 0; j < dim; j++) {
+				double d = mfcc[i][j] - mu[j];
+				m2[j] += d * d;
+			}
+		}
+	}
+
+	/** cluster of all the frames of the matrix */
+	public SpeakerCluster(SimpleMatrix mfcc, double pitch) {
+		this(toArray(mfcc), 0, mfcc.numRows(), mfcc.numCols(), pitch);
+	}
+
+	/** cluster of the given sufficient statistics, e.g. from a FeatureIndex */
+	public SpeakerCluster(int count, double[] sum, double[] m2, double pitch) {
+		if (sum.length != m2.length) {
+			throw new IllegalArgumentException("Sum and sum of squares have " + sum.length + " and " + m2.length + " dimensions");
+		}
+		this.count = count;
+		this.sum = sum;
+		this.m2 = m2;
+		this.pitch = pitch;
+	}
+
+	private SpeakerCluster(SpeakerCluster c) {
+		this.count = c.count;
+		this.sum = c.sum.clone();
+		this.m2 = c.m2.clone();
+		this.pitch = c.pitch;
+	}
+
+	private static double[][] toArray(SimpleMatrix mat) {
+		double[][] dat = new double[mat.numRows()][mat.numCols()];
+		for (int i = 0; i < dat.length; i++) {
+			for (int j = 0; j < dat[i].length; j++) {
+				dat[i][j] = mat.get(i, j);
+			}
+		}
+		return dat;
+	}
+
+	/** @return an independent copy of the cluster */
+	public SpeakerCluster copy() {
+		return new SpeakerCluster(this);
+	}
+
+	/** add the frames of the other cluster, the pitch is left unchanged */
+	public void merge(SpeakerCluster c) {
+		if (c.sum.length != sum.length) {
+			throw new IllegalArgumentException("Cannot merge " + c.sum.length + " into " + sum.length + " dimensions");
+		}
+		if (c.count == 0) {
+			return;
+		}
+		if (count == 0) {
+			System.arraycopy(c.sum, 0, sum, 0, sum.length);
+			System.arraycopy(c.m2, 0, m2, 0, m2.length);
+			count = c.count;
+			mean = null;
+			sigma = null;
+			return;
+		}
+		double n = count + c.count;
+		double w = (double) count * c.count / n;
+		for (int j = 0; j < sum.length; j++) {
+			double delta = c.sum[j] / c.count - sum[j] / count;
+			m2[j] += c.m2[j] + delta * delta * w;
+			sum[j] += c.sum[j];
+		}
+		count += c.count;
+		mean = null;
+		sigma = null;
+	}
+
+	/** @return the number of frames */
+	public int getCount() {
+		return count;
+	}
+
+	/** @return the number of MFCC dimensions */
+	public int getDimension() {
+		return sum.length;
+	}
+
+	/** @return the per dimension sum */
+	public double[] getSum() {
+		return sum;
+	}
+
+	/** @return the per dimension sum of squared deviations from the mean */
+	public double[] getSumOfSquares() {
+		return m2;
+	}
+
+	/** @return the per dimension mean, shared with the cluster so do not modify it */
+	public double[] getMean() {
+		if (mean == null) {
+			mean = new double[sum.length];
+			if (count > 0) {
+				for (int j = 0; j < sum.length; j++) {
+					mean[j] = sum[j] / count;
+				}
+			}
+		}
+		return mean;
+	}
+
+	/** @return the per dimension (population) variance */
+	public double[] getVariance() {
+		double[] var = new double[m2.length];
+		if (count > 0) {
+			for (int j = 0; j < m2.length; j++) {
+				var[j] = m2[j] / count;
+			}
+		}
+		return var;
+	}
+
+	/** @return the per dimension standard deviation, shared with the cluster so do not modify it */
+	public double[] getStd() {
+		if (sigma == null) {
+			sigma = new double[m2.length];
+			if (count > 0) {
+				for (int j = 0; j < m2.length; j++) {
+					sigma[j] = Math.sqrt(m2[j] / count);
+				}
+			}
+		}
+		return sigma;
+	}
+
+	/** @return the mean pitch */
+	public double getPitch() {
+		return pitch;
+	}
+
+	public void setPitch(double pitch) {
+		this.pitch = pitch;
+	}
+
+}
@@ -22,30 +22,52 @@
 
 package edu.rutgers.winlab.crowdpp.audio;
 
-import edu.rutgers.winlab.crowdpp.util.Maths;
 import edu.rutgers.winlab.crowdpp.util.Constants;
+import edu.rutgers.winlab.crowdpp.util.DistanceFunction;
 import edu.rutgers.winlab.crowdpp.util.Distances;
 import edu.rutgers.winlab.crowdpp.util.FileProcess;
+import edu.rutgers.winlab.crowdpp.util.Log;
+import edu.rutgers.winlab.crowdpp.util.MatrixReader;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.lang.Math;
 
 import org.ejml.simple.SimpleMatrix;
 
-import android.util.Log;
-
 /**
  * The SpeakerCount class 
  * @author Chenren Xu, Sugang Li
  */
 public class SpeakerCount {
 	
+	/** the chosen distance function, the mfcc_dist thresholds have to be calibrated for it */
+	private static DistanceFunction distance = Distances.COSINE;
+
+	public static DistanceFunction getDistanceFunction() {
+		return distance;
+	}
+
+	public static void setDistanceFunction(DistanceFunction f) {
+		distance = f;
+	}
+
 	/** the chosen distance function */
 	public static double getDistance(SimpleMatrix a, SimpleMatrix b) {
-		return Distances.Cosine(a, b);
+		return Distances.getDistance(distance, a, b);
+	}
+
+	/** the chosen distance function on the cluster statistics */
+	public static double getDistance(SpeakerCluster a, SpeakerCluster b) {
+		DistanceFunction f = distance;
+		if (f.usesSigma()) {
+			return f.getDistance(a.getMean(), a.getStd(), b.getMean(), b.getStd());
+		}
+		return f.getDistance(a.getMean(), null, b.getMean(), null);
 	}
 
 	/** gender estimation algorithm */
@@ -85,78 +107,45 @@ public class SpeakerCount {
 	/** calibrating the owner's voice data */
 	public static boolean selfCalibration(String path) throws java.io.IOException {
 		
-		double[][] mfcc 	= FileProcess.readFile(path + ".jstk.mfcc.txt");
+		double[][] mfcc 	= FileProcess.readFile(path + ".jstk.mfcc.txt", Constants.mfcc_dim);
 		double[][] pitch 	= FileProcess.readFile(path + ".YIN.pitch.txt");			
 		
-		// compute the number of segments
-		int sample_num 		= pitch.length;
-		double[] time			= new double[sample_num]; 
-		time[0] = 0.032;
-		for(int i = 1; i < time.length; i++) {
-			time[i] = time[i-1] + 0.016;
-		}
-		int end_id = sample_num - 1;
-		int seg_num = (int) Math.floor(time[end_id] / Constants.seg_duration_sec);
-		
 		// find the begin and end indices of each segment
-		int[] lower_id = new int [seg_num];
-		int[] upper_id = new int [seg_num];
-
-		lower_id[0] = 0;
-		int seg_id = 1;
-
-		for (int i = 0; i < sample_num; i++) {
-			if (time[i] <= (double)(seg_id * Constants.seg_duration_sec) && time[i+1] > (double)(seg_id * Constants.seg_duration_sec)) {
-				upper_id[seg_id-1] = i;
-				seg_id++;
-				if (seg_id == seg_num + 1) 
-					break;
-				lower_id[seg_id-1] = i + 1;
-			}
-		}
+		int[][] bounds = FeatureIndex.getSegmentBounds(pitch.length, Constants.seg_duration_sec);
+		int[] lower_id = bounds[0];
+		int[] upper_id = bounds[1];
 
 		// filter out the non-voiced segments		
-		SimpleMatrix mfcc_mat = new SimpleMatrix(mfcc);
-		List<SimpleMatrix> mfcc_list = new ArrayList<SimpleMatrix>();
+		FeatureIndex index = new FeatureIndex(pitch, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+		List<Integer> seg_list = new ArrayList<Integer>();
 		List<Double> pitch_list = new ArrayList<Double>();
-		List<Double> pitch_rate = new ArrayList<Double>();		
-		List<Double> pitch_mu = new ArrayList<Double>();
-		List<Double> pitch_sigma = new ArrayList<Double>();
 			
-		for(int i = 0; i < seg_num; i++) {
-			int c = 0;
-			List<Double> temp_pitch = new ArrayList<Double>();
-			for(int j = lower_id[i]; j < upper_id[i]; j++) {
-				if (pitch[j][0] != -1) {
-					c++;
-					temp_pitch.add(pitch[j][0]);
-				}
-			}
-			pitch_rate.add((double)c / (upper_id[i] - lower_id[i] + 1));
-			pitch_mu.add(Maths.getMean(temp_pitch));
-			pitch_sigma.add(Math.sqrt(Maths.getVariance(temp_pitch)));
+		for (int i = 0; i < lower_id.length; i++) {
+			double pitch_rate = (double) index.getVoicedCount(lower_id[i], upper_id[i]) / (upper_id[i] - lower_id[i] + 1);
+			double pitch_mu = index.getPitchMean(lower_id[i], upper_id[i]);
+			double pitch_sigma = index.getPitchSigma(lower_id[i], upper_id[i]);
 			
-			if (pitch_rate.get(i) >= Constants.pitch_rate_lower 
-					&& pitch_mu.get(i) >= Constants.pitch_mu_lower 
-					&& pitch_mu.get(i) <= Constants.pitch_mu_upper 
-					&& pitch_sigma.get(i) <= Constants.pitch_sigma_upper) {
-				mfcc_list.add(mfcc_mat.extractMatrix(lower_id[i], upper_id[i], 0, 19)); 
-				pitch_list.add(pitch_mu.get(i));
+			if (pitch_rate >= Constants.pitch_rate_lower 
+					&& pitch_mu >= Constants.pitch_mu_lower 
+					&& pitch_mu <= Constants.pitch_mu_upper 
+					&& pitch_sigma <= Constants.pitch_sigma_upper) {
+				seg_list.add(i);
+				pitch_list.add(pitch_mu);
 			}
 		}
 		
 		// calibration failed without enough calibration data
-		if (mfcc_list.size() * Constants.seg_duration_sec < Constants.cal_duration_sec_lower) {
+		if (seg_list.size() * Constants.seg_duration_sec < Constants.cal_duration_sec_lower) {
 			return false;
 		}
 		// log the calibration feature data 
 		else {
 			File file_mfcc = new File(path + ".jstk.mfcc.txt");
-			FileOutputStream fos_mfcc = new FileOutputStream(file_mfcc, true);
-			for (int i = 0; i < mfcc_list.size(); i++) {
-				for (int j = 0; j < mfcc_list.get(i).numRows(); j++) {
-					for (int k = 0; k < mfcc_list.get(i).numCols(); k++) {
-						fos_mfcc.write((Double.toString(mfcc_list.get(i).get(j,k)) + "\t").getBytes());
+			OutputStream fos_mfcc = new BufferedOutputStream(new FileOutputStream(file_mfcc, true));
+			for (int i : seg_list) {
+				for (int j = lower_id[i]; j < upper_id[i]; j++) {
+					for (int k = 0; k < Constants.mfcc_dim; k++) {
+						fos_mfcc.write((Double.toString(mfcc[j][k]) + "\t").getBytes());
 					}
 					fos_mfcc.write("\n".getBytes());
 				}
@@ -172,239 +161,167 @@ public class SpeakerCount {
 		}
 	}
 	
-	@SuppressWarnings("rawtypes")
-	/** segment the conversation testing data */	
-	public static List[] segmentation(String[] args) throws java.io.IOException {
+	/** segment the conversation testing data, reading the mfcc and pitch files (args[0], args[1]) frame by frame, or at once for the BIC segmentation */	
+	public static List<SpeakerCluster> segmentation(String[] args) throws java.io.IOException {
 
-		double[][] mfcc 	= FileProcess.readFile(args[0]);
-		double[][] pitch 	= FileProcess.readFile(args[1]);			
-		
-		// compute the number of segments
-		int sample_num 		= pitch.length;
-		double[] time			= new double[sample_num]; 
-		time[0] = 0.032;
-		for(int i = 1; i < time.length; i++) {
-			time[i] = time[i-1] + 0.016;
+		if (Constants.seg_bic) {
+			return segmentation(FileProcess.readFile(args[0], Constants.mfcc_dim), FileProcess.readFile(args[1]));
 		}
-		
-		int end_id = sample_num - 1;
-		int seg_num = (int) Math.floor(time[end_id] / Constants.seg_duration_sec);
 
-		if (seg_num == 0)
-			return null;
-		
-		// find the begin and end indices of each segment
-		int[] lower_id = new int [seg_num];
-		int[] upper_id = new int [seg_num];
-
-		lower_id[0] = 0;
-		int seg_id = 1;
-			
-		for (int i = 0; i < sample_num; i++) {
-			if (time[i] <= (double)(seg_id * Constants.seg_duration_sec) && time[i+1] > (double)(seg_id * Constants.seg_duration_sec)) {
-				upper_id[seg_id-1] = i;
-				seg_id++;
-				if (seg_id == seg_num + 1) 
-					break;
-				lower_id[seg_id-1] = i + 1;
-			}
-		}
-			
-		// filter out the non-voiced segments		
-		SimpleMatrix mfcc_mat = new SimpleMatrix(mfcc);
-		List<SimpleMatrix> mfcc_list = new ArrayList<SimpleMatrix>();
-		List<Double> pitch_list = new ArrayList<Double>();
-		List<Double> pitch_rate = new ArrayList<Double>();		
-		List<Double> pitch_mu = new ArrayList<Double>();
-		List<Double> pitch_sigma = new ArrayList<Double>();
-			
-		for (int i = 0; i < seg_num; i++) {
-			int c = 0;
-			List<Double> temp_pitch = new ArrayList<Double>();
-			for (int j = lower_id[i]; j < upper_id[i]; j++) {
-				if (pitch[j][0] < Constants.pitch_mu_lower || pitch[j][0] > Constants.pitch_mu_upper) 
-					pitch[j][0] = -1;				
-				if (pitch[j][0] != -1) {
-					c++;
-					temp_pitch.add(pitch[j][0]);
-				}
-			}
-			pitch_rate.add((double)c / (upper_id[i] - lower_id[i] + 1));
-			pitch_mu.add(Maths.getMean(temp_pitch));
-			pitch_sigma.add(Math.sqrt(Maths.getVariance(temp_pitch)));
-			if (pitch_rate.get(i) >= Constants.pitch_rate_lower 
-					&& pitch_mu.get(i) >= Constants.pitch_mu_lower 
-					&& pitch_mu.get(i) <= Constants.pitch_mu_upper 
-					&& pitch_sigma.get(i) <= Constants.pitch_sigma_upper) {
-				mfcc_list.add(mfcc_mat.extractMatrix(lower_id[i], upper_id[i], 0, 19)); 
-				pitch_list.add(pitch_mu.get(i));
+		MatrixReader mfcc 	= new MatrixReader(args[0], Constants.mfcc_dim);
+		MatrixReader pitch 	= new MatrixReader(args[1], 1);
+		try {
+			StreamingSegmenter segmenter = new StreamingSegmenter();
+			double[] mfcc_row = new double[Constants.mfcc_dim];
+			double[] pitch_row = new double[1];
+			while (pitch.next(pitch_row) && mfcc.next(mfcc_row)) {
+				segmenter.addFrame(mfcc_row, pitch_row[0]);
 			}
+			return segmenter.finish();
+		} finally {
+			mfcc.close();
+			pitch.close();
 		}
+	}
+	
+	/** segment the conversation testing data already in memory (one row per frame), at the speaker changes if Constants.seg_bic */	
+	public static List<SpeakerCluster> segmentation(double[][] mfcc, double[][] pitch) {
 		
-		// no voiced data
-		if (pitch_list.size() == 0) {
-			return null;
+		if (Constants.seg_bic) {
+			return new BicSegmenter(mfcc, pitch).finish();
 		}
-		
-		// iteratively pre-cluster the neighbor segments until no merging happens 
-		int last_size, p, q;
-		while (true) {
-			last_size = mfcc_list.size();
-			p = 0; q = 1;
-			while (q < mfcc_list.size()) {
-		  	if (getDistance(mfcc_list.get(p), mfcc_list.get(q)) <= Constants.mfcc_dist_same_un && genderDecision(pitch_list.get(p), pitch_list.get(q)) == 1) {	
-		  		mfcc_list.set(p, mfcc_list.get(p).combine(mfcc_list.get(p).numRows(), 0, mfcc_list.get(q)));
-		      pitch_list.set(p, (pitch_list.get(p) + pitch_list.get(q)) / 2);
-		      mfcc_list.remove(q);
-		      pitch_list.remove(q);
-		    }
-		    else {
-		    	p = q; q++;
-		    }
-		  }
-		  if (last_size == mfcc_list.size()) {
-		  	break;
-		  }
-		}	
-			
-		return new List[]{mfcc_list, pitch_list};
+		StreamingSegmenter segmenter = new StreamingSegmenter();
+		for (int i = 0; i < pitch.length; i++) {
+			segmenter.addFrame(mfcc[i], pitch[i][0]);
+		}
+		return segmenter.finish();
 	}
 	
 	/** unsupervised speaker counting algorithm without owner's calibration data */	
-	public static int unsupervisedAlgorithm(List<SimpleMatrix> mfcc, List<Double> pitch) {
-
-	  List<SimpleMatrix> new_mfcc = new ArrayList<SimpleMatrix>();
-	  // admit the first segment as speaker 1
-	  new_mfcc.add(mfcc.get(0));
-	  List<Double> new_pitch = new ArrayList<Double>();
-	  new_pitch.add(pitch.get(0));
-		int speaker_count = 1;
-
-	  for (int i = 1; i < mfcc.size(); i++) {
-	  	int diff_count = 0;
-	    for (int j = 0; j < speaker_count; j++) {
-	    	// for each audio segment i, compare it with the each admitted audio segment j
-	    	double mfcc_dist = getDistance(mfcc.get(i), new_mfcc.get(j));
-	    	// different gender
-	      if (genderDecision(pitch.get(i), new_pitch.get(j)) == 0) { 
-	      	diff_count = diff_count + 1;
-	      } 
-	      // mfcc distance is larger than a threshold
-	      else if (mfcc_dist >= Constants.mfcc_dist_diff_un) {
-	      	diff_count = diff_count + 1;            	
-	      }
-	      // same speaker
-	      else {
-	      	if (mfcc_dist <= Constants.mfcc_dist_same_un && genderDecision(pitch.get(i), new_pitch.get(j)) == 1) {
-		        new_mfcc.set(j, new_mfcc.get(j).combine(new_mfcc.get(j).numRows(), 0, mfcc.get(i))); // merge
-						break;
-		      }
-	      }
-	    }
-	    // admit as a new speaker if different from all the admitted speakers.
-	    if (diff_count == speaker_count) {
-	    	speaker_count = speaker_count + 1;
-	      new_mfcc.add(mfcc.get(i));
-	      new_pitch.add(pitch.get(i));
-	    }
-	  }
-	  return speaker_count;
+	public static int unsupervisedAlgorithm(List<SpeakerCluster> mfcc) {
+		// the first segment is admitted as speaker 1
+		IncrementalSpeakerCounter counter = new IncrementalSpeakerCounter();
+		for (SpeakerCluster c : mfcc) {
+			counter.add(c);
+		}
+		return counter.getCount();
 	}
 	
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	/** unsupervised speaker counting algorithm wrapper function */	
 	public static int unsupervised(String[] test_files) throws java.io.IOException {
+		return unsupervised(segmentation(test_files));
+	}
 
-		List[] features = segmentation(test_files);
+	/** unsupervised speaker counting algorithm wrapper function for the features in memory */	
+	public static int unsupervised(double[][] mfcc, double[][] pitch) {
+		return unsupervised(segmentation(mfcc, pitch));
+	}
+	
+	/** unsupervised speaker counting algorithm wrapper function for the segmented features, null if there were none */	
+	public static int unsupervised(List<SpeakerCluster> features) {
 		
 		if (features == null) {
 			Log.i("SpeakerCount", "No enough audio data");
 			return 0;
 		}
 		else {
-			return unsupervisedAlgorithm(features[0], features[1]);
+			return unsupervisedAlgorithm(features);
 		}
 	}
 
 	/** semisupervised speaker counting algorithm with owner's calibration data */	
-	public static double[] semisupervisedAlgorithm(SimpleMatrix trn_mfcc, double trn_pitch, List<SimpleMatrix> tst_mfcc, List<Double> tst_pitch) {
-		
-	  List<SimpleMatrix> new_mfcc = new ArrayList<SimpleMatrix>();
-	  new_mfcc.add(trn_mfcc);
-	  List<Double> new_pitch = new ArrayList<Double>();
-	  new_pitch.add(trn_pitch);
-		double speaker_count = 1;
-		double speech_percentage = 0;
-		double length = 0;
-		String log;
+	public static double[] semisupervisedAlgorithm(SpeakerCluster trn_mfcc, List<SpeakerCluster> tst_mfcc) {
+		return semisupervisedAlgorithm(trn_mfcc, tst_mfcc, null);
+	}
+	
+	/** semisupervised speaker counting algorithm, the segments merged into the owner are added to owner_mfcc unless it is null */	
+	public static double[] semisupervisedAlgorithm(SpeakerCluster trn_mfcc, List<SpeakerCluster> tst_mfcc, List<SpeakerCluster> owner_mfcc) {
+		List<SpeakerCluster> trn = new ArrayList<SpeakerCluster>();
+		trn.add(trn_mfcc);
+		return enrolledAlgorithm(trn, tst_mfcc, owner_mfcc);
+	}
+	
+	/** 
+	 * semisupervised speaker counting algorithm with several enrolled speakers, the owner first.
+	 * Each segment is matched against the nearest enrolled speaker before the admitted speakers; 
+	 * with only the owner enrolled this is the single owner algorithm.
+	 * The segments merged into the owner are added to owner_mfcc unless it is null.
+	 * @return the speaker count, followed by the speech percentage of every enrolled speaker
+	 */	
+	public static double[] enrolledAlgorithm(List<SpeakerCluster> trn_mfcc, List<SpeakerCluster> tst_mfcc, List<SpeakerCluster> owner_mfcc) {
+		IncrementalSpeakerCounter counter = new IncrementalSpeakerCounter(trn_mfcc, owner_mfcc);
 		Log.i("Testing MFCC segments", Integer.toString(tst_mfcc.size()));
-	  for (int i = 0; i < tst_mfcc.size(); i++) {
-	  	int diff_count = 0;
-	    for (int j = 0; j < speaker_count; j++) {
-	    	// for each audio segment i, compare it with the each admitted audio segment j
-	    	double mfcc_dist = getDistance(tst_mfcc.get(i), new_mfcc.get(j));
-	  		Log.i("MFCC distance", Integer.toString(i) + "," + Integer.toString(j) + "," + Double.toString(mfcc_dist));
-      	log = Integer.toString(i) + "," + Double.toString(tst_pitch.get(i)) + "," + Integer.toString(j) + "," + Double.toString(new_pitch.get(j));
-      	Log.i("Pitch information", log);
-	    	// different gender
-	      if (genderDecision(tst_pitch.get(i), new_pitch.get(j)) == 0) { 
-	      	diff_count++;
-	    		Log.i("Different speaker", "based on gender");
-	      } 
-	      // mfcc distance is larger than a threshold
-	      else if ( (j == 0 && mfcc_dist >= Constants.mfcc_dist_diff_semi) || (j > 0 && mfcc_dist >= Constants.mfcc_dist_diff_un) ) {
-	      	diff_count++;
-	    		Log.i("Different speaker", "based on MFCC");
-	      }
-	      // same speaker
-	      else {
-	        log = Integer.toString(j) + "," + mfcc_dist + "," + Constants.mfcc_dist_same_semi + "," + Double.toString(tst_pitch.get(i));
-	    		Log.i("Maybe same speaker", log);
-	      	if ( ((j == 0 && mfcc_dist <= Constants.mfcc_dist_same_semi) || (j > 0 && mfcc_dist <= Constants.mfcc_dist_same_un) ) && genderDecision(tst_pitch.get(i), new_pitch.get(j)) == 1) {
-		        new_mfcc.set(j, new_mfcc.get(j).combine(new_mfcc.get(j).numRows(), 0, tst_mfcc.get(i))); // merge
-		        log = Integer.toString(j) + "," + Integer.toString(tst_mfcc.get(i).numRows());
-		    		Log.i("Merging", log);
-						break;
-		      }
-	      }
-	    }
-	    // admit as a new speaker if different from all the admitted speakers.
-	    if (diff_count == speaker_count) {
-	    	speaker_count++;
-	      new_mfcc.add(tst_mfcc.get(i));
-	      new_pitch.add(tst_pitch.get(i));
-	    }
-      length += tst_mfcc.get(i).numRows();
-	  }
-	  
-	  // don't count the owner if there is no voice from the owner in the conversation testing data
-	  if (new_mfcc.get(0).numRows() == trn_mfcc.numRows())
-	  	speaker_count--;
-	  
-		Log.i("Training length", Integer.toString(trn_mfcc.numRows()));
-		Log.i("Testing length", Integer.toString(new_mfcc.get(0).numRows()));
-		Log.i("Total length", Double.toString(length));
-
-	  speech_percentage = 100 * (double) (new_mfcc.get(0).numRows() - trn_mfcc.numRows()) / length;
-		Log.i("Speech percentage", Double.toString(speech_percentage));
-
-	  return new double[] {speaker_count, speech_percentage};
+		for (SpeakerCluster c : tst_mfcc) {
+			counter.add(c);
+		}
+		return counter.getResult();
 	}
 	
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	/** semisupervised speaker counting algorithm wrapper function */	
 	public static double[] semisupervised(String[] test_files, String[] cal_files) throws java.io.IOException {
-
-		List[] tst_features = segmentation(test_files);
+		return semisupervised(segmentation(test_files), FileProcess.readFile(cal_files[0], Constants.mfcc_dim), FileProcess.readFile(cal_files[1]));
+	}	
+	
+	/** semisupervised speaker counting algorithm wrapper function for the testing features in memory */	
+	public static double[] semisupervised(double[][] mfcc, double[][] pitch, String[] cal_files) throws java.io.IOException {
+		return semisupervised(mfcc, pitch, FileProcess.readFile(cal_files[0], Constants.mfcc_dim), FileProcess.readFile(cal_files[1]));
+	}	
+	
+	/** semisupervised speaker counting algorithm wrapper function for the testing and calibration features in memory */	
+	public static double[] semisupervised(double[][] mfcc, double[][] pitch, double[][] cal_mfcc, double[][] cal_pitch) {
+		return semisupervised(segmentation(mfcc, pitch), cal_mfcc, cal_pitch);
+	}	
+	
+	/** semisupervised speaker counting algorithm wrapper function for the segmented testing features, null if there were none */	
+	public static double[] semisupervised(List<SpeakerCluster> tst_features, double[][] cal_mfcc, double[][] cal_pitch) {
 		
 		if (tst_features == null) {
 			Log.i("SpeakerCount", "No enough audio data");
 			return new double[] {0, -1};
 		}
 		else {
-			SimpleMatrix trn_mfcc = new SimpleMatrix(FileProcess.readFile(cal_files[0]));
-			double trn_pitch = Maths.getColMean(FileProcess.readFile(cal_files[1]))[0];
-			return semisupervisedAlgorithm(trn_mfcc, trn_pitch, tst_features[0], tst_features[1]);
+			return semisupervised(tst_features, CalibrationProfile.compile(cal_mfcc, cal_pitch));
+		}
+	}	
+	
+	/** semisupervised speaker counting algorithm wrapper function for the segmented testing features and the compiled calibration */	
+	public static double[] semisupervised(List<SpeakerCluster> tst_features, CalibrationProfile cal) {
+		return semisupervised(tst_features, cal, null);
+	}	
+	
+	/** semisupervised speaker counting algorithm wrapper function, the segments merged into the owner are added to owner_features unless it is null */	
+	public static double[] semisupervised(List<SpeakerCluster> tst_features, CalibrationProfile cal, List<SpeakerCluster> owner_features) {
+		
+		if (tst_features == null) {
+			Log.i("SpeakerCount", "No enough audio data");
+			return new double[] {0, -1};
+		}
+		else {
+			return semisupervisedAlgorithm(cal.getCluster(), tst_features, owner_features);
+		}
+	}	
+	
+	/** 
+	 * semisupervised speaker counting algorithm wrapper function for several enrolled speakers, the owner first;
+	 * the segments merged into the owner are added to owner_features unless it is null 
+	 * @return the speaker count, followed by the speech percentage of every enrolled speaker
+	 */	
+	public static double[] semisupervised(List<SpeakerCluster> tst_features, List<CalibrationProfile> cal, List<SpeakerCluster> owner_features) {
+		
+		if (tst_features == null) {
+			Log.i("SpeakerCount", "No enough audio data");
+			double[] rv = new double[1 + cal.size()];
+			for (int e = 0; e < cal.size(); e++) {
+				rv[1 + e] = -1;
+			}
+			return rv;
+		}
+		else {
+			List<SpeakerCluster> trn_features = new ArrayList<SpeakerCluster>();
+			for (CalibrationProfile profile : cal) {
+				trn_features.add(profile.getCluster());
+			}
+			return enrolledAlgorithm(trn_features, tst_features, owner_features);
 		}
 	}	
 	
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import de.fau.cs.jstk.sampled.Segmenter;
+import edu.rutgers.winlab.crowdpp.util.Constants;
+
+/**
+ * The SpeechProbe class
+ * Decides from the first seconds of a recording whether it is worth recording and counting the rest.
+ * The samples go through the short time energy segmentation of the jstk Segmenter: speech is likely
+ * if it finds speech at an SNR of at least probe_snr_lower dB, or if some window is louder than
+ * probe_level_lower dBFS, which catches talking that goes on through the whole probe. All buffers
+ * are handed on to the next listener, the probe only looks at them.
+ */
+public class SpeechProbe implements AudioRecorder.OnBufferReadyListener {
+
+	/** told once on the recording thread, when the probe is complete */
+	public interface Listener {
+		/**
+		 * @param speech true if speech is likely
+		 * @param snr the SNR of the probe in dB
+		 * @param level the energy of the loudest window in dBFS
+		 */
+		void onProbe(boolean speech, double snr, double level);
+	}
+
+	/** the Segmenter defaults: 25ms windows, smoothed over 200ms */
+	private static final double WINDOW_SEC = 0.025;
+	private static final double SMOOTHING_SEC = 0.2;
+
+	private final double seconds;
+	private final Listener listener;
+	/** receives all the buffers, null for none */
+	private final AudioRecorder.OnBufferReadyListener next;
+
+	private Segmenter segmenter;
+	private int remaining;
+	private boolean decided = false;
+	private boolean speech;
+	private double snr, level;
+
+	public SpeechProbe(double seconds, Listener listener, AudioRecorder.OnBufferReadyListener next) {
+		this.seconds = seconds;
+		this.listener = listener;
+		this.next = next;
+	}
+
+	@Override
+	public void onStart(int sampleRate) {
+		segmenter = new Segmenter(sampleRate, WINDOW_SEC, SMOOTHING_SEC, Constants.probe_snr_lower);
+		remaining = (int) Math.round(seconds * sampleRate);
+		if (next != null) {
+			next.onStart(sampleRate);
+		}
+	}
+
+	@Override
+	public void onBufferReady(byte[] buffer, int length) {
+		if (!decided && segmenter != null) {
+			int n = Math.min(length / 2, remaining);
+			double[] samples = new double[n];
+			for (int i = 0; i < n; i++) {
+				samples[i] = (short) ((buffer[2*i] & 0xff) | (buffer[2*i+1] << 8)) / 32768.0;
+			}
+			segmenter.processSamples(samples);
+			remaining -= n;
+			if (remaining <= 0) {
+				decide();
+			}
+		}
+		if (next != null) {
+			next.onBufferReady(buffer, length);
+		}
+	}
+
+	private void decide() {
+		decided = true;
+		try {
+			segmenter.update();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (segmenter.getNWindows() == 0) {
+			// nothing to judge, record as usual
+			speech = true;
+		}
+		else {
+			snr = segmenter.getSNR();
+			level = 10 * Math.log10(segmenter.getMaxEnergy() + 1e-12);
+			speech = segmenter.hasSpeech() || level >= Constants.probe_level_lower;
+		}
+		segmenter = null;
+		if (listener != null) {
+			listener.onProbe(speech, snr, level);
+		}
+	}
+
+	/** @return true once the probe is complete */
+	public boolean isDecided() {
+		return decided;
+	}
+
+	/** @return true if speech is likely, only valid once decided */
+	public boolean isSpeech() {
+		return speech;
+	}
+
+	/** @return the SNR of the probe in dB */
+	public double getSNR() {
+		return snr;
+	}
+
+	/** @return the energy of the loudest window in dBFS */
+	public double getLevel() {
+		return level;
+	}
+
+}
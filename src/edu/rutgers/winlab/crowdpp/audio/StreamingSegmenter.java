@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.rutgers.winlab.crowdpp.util.Constants;
+
+/**
+ * The StreamingSegmenter class
+ * Segments the features frame by frame like SpeakerCount.segmentation: only the frames of the
+ * current segment are buffered, every segment is reduced to its SpeakerCluster (or dropped if it
+ * is not voiced) as soon as the first frame after its end arrives. The memory therefore depends
+ * on the segment length and the number of voiced segments, not on the recording length.
+ * With an MfccFrameChain the windowed frames are buffered instead, and their MFCC is only computed
+ * for the segments that pass the pitch filter.
+ */
+public class StreamingSegmenter {
+
+	/** told about every segment as soon as it is closed */
+	public interface Listener {
+		/**
+		 * @param segment the voiced segment, before the neighbor merging; null if it was left out
+		 * @param end the end time of the segment in seconds
+		 */
+		void onSegment(SpeakerCluster segment, double end);
+	}
+
+	private final int dim;
+	private final double segmentSeconds;
+	/** the time between two frames in seconds */
+	private final double frameShift;
+
+	/** the MFCC (or windowed) frames of the current segment, plus the frame that closes it */
+	private double[][] mfcc = new double[256][];
+	private double[] pitch = new double[256];
+	private int buffered = 0;
+
+	private int frames = 0;
+	private double time;
+	/** the number of closed segments and the end time of the current one */
+	private int closed = 0;
+	private double bound;
+
+	private final List<SpeakerCluster> segments = new ArrayList<SpeakerCluster>();
+
+	private Listener listener;
+
+	/** computes the MFCC of the buffered windowed frames, null if the frames are MFCC */
+	private MfccFrameChain chain;
+	/** the number of values buffered per frame */
+	private int width;
+	/** the MFCC of a voiced segment and the number of frames it was computed for */
+	private double[][] rows;
+	private int computed = 0;
+
+	/** segments of Constants.seg_duration_sec seconds over the Constants.mfcc_dim first MFCC columns */
+	public StreamingSegmenter() {
+		this(Constants.mfcc_dim, Constants.seg_duration_sec);
+	}
+
+	/** segments of Constants.seg_duration_sec seconds over the first cepstra of the profile, at its frame hop */
+	public StreamingSegmenter(FidelityProfile profile) {
+		this(Math.min(Constants.mfcc_dim, profile.getCepstra()), Constants.seg_duration_sec, profile.getFrameShift());
+	}
+
+	public StreamingSegmenter(int dim, double segmentSeconds) {
+		this(dim, segmentSeconds, FeatureIndex.FRAME_SHIFT);
+	}
+
+	public StreamingSegmenter(int dim, double segmentSeconds, double frameShift) {
+		this.dim = dim;
+		this.segmentSeconds = segmentSeconds;
+		this.frameShift = frameShift;
+		this.bound = segmentSeconds;
+		this.width = dim;
+	}
+
+	/**
+	 * Take the windowed frames of the chain instead of MFCC frames and compute the MFCC only for the
+	 * voiced segments, before the first frame is added.
+	 */
+	public void setMfccChain(MfccFrameChain chain) {
+		if (frames > 0) {
+			throw new IllegalStateException("Frames were already added");
+		}
+		this.chain = chain;
+		this.width = chain.getFrameSize();
+		mfcc = new double[mfcc.length][];
+	}
+
+	/** add the next frame: its MFCC (at least dim values) or windowed samples (copied) and its pitch (-1 if unvoiced) */
+	public void addFrame(double[] mfccFrame, double pitchFrame) {
+		// the same frame times as the batch segmentation
+		double t = frames == 0 ? FeatureIndex.FIRST_FRAME_TIME : time + frameShift;
+		if (frames > 0 && time <= bound && t > bound) {
+			// the previous frame is the last one before the bound, it ends the segment and is left out
+			closeSegment(buffered - 1, bound);
+			buffered = 0;
+			closed++;
+			bound = (closed + 1) * segmentSeconds;
+		}
+		if (buffered == mfcc.length) {
+			double[][] grownMfcc = new double[buffered * 2][];
+			System.arraycopy(mfcc, 0, grownMfcc, 0, buffered);
+			mfcc = grownMfcc;
+			double[] grownPitch = new double[buffered * 2];
+			System.arraycopy(pitch, 0, grownPitch, 0, buffered);
+			pitch = grownPitch;
+		}
+		if (mfcc[buffered] == null) {
+			mfcc[buffered] = new double[width];
+		}
+		System.arraycopy(mfccFrame, 0, mfcc[buffered], 0, width);
+		pitch[buffered] = pitchFrame;
+		buffered++;
+		frames++;
+		time = t;
+	}
+
+	/** filter the segment of the first n buffered frames like SpeakerCount.segmentation */
+	private void closeSegment(int n, double end) {
+		// the pitch outside of [pitch_mu_lower, pitch_mu_upper] is not voiced
+		int c = 0;
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			if (isVoiced(pitch[i])) {
+				c++;
+				sum = sum + pitch[i];
+			}
+		}
+		double pitch_rate = (double) c / (n + 1);
+		double pitch_mu = sum / c;
+		double variance = 0;
+		for (int i = 0; i < n; i++) {
+			if (isVoiced(pitch[i])) {
+				variance = variance + (pitch[i] - pitch_mu) * (pitch[i] - pitch_mu);
+			}
+		}
+		double pitch_sigma = Math.sqrt(variance / c);
+		if (pitch_rate >= Constants.pitch_rate_lower 
+				&& pitch_mu >= Constants.pitch_mu_lower 
+				&& pitch_mu <= Constants.pitch_mu_upper 
+				&& pitch_sigma <= Constants.pitch_sigma_upper) {
+			SpeakerCluster segment = new SpeakerCluster(chain != null ? computeMfcc(n) : mfcc, 0, n, dim, pitch_mu);
+			segments.add(segment);
+			if (listener != null) {
+				listener.onSegment(segment, end);
+			}
+		}
+		else if (listener != null) {
+			listener.onSegment(null, end);
+		}
+	}
+
+	/** @return the MFCC of the first n buffered windowed frames */
+	private double[][] computeMfcc(int n) {
+		if (rows == null || rows.length < n) {
+			rows = new double[Math.max(n, mfcc.length)][dim];
+		}
+		for (int i = 0; i < n; i++) {
+			double[] row = chain.compute(mfcc[i]);
+			if (row == null) {
+				throw new IllegalStateException("The MFCC chain failed");
+			}
+			System.arraycopy(row, 0, rows[i], 0, dim);
+		}
+		computed += n;
+		return rows;
+	}
+
+	/** @return the number of frames the MFCC was computed for, all of them unless an MfccFrameChain is set */
+	public int getMfccFrameCount() {
+		return chain != null ? computed : frames;
+	}
+
+	/** the listener is called on the thread adding the frames, null for none */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	private static boolean isVoiced(double pitch) {
+		return pitch != -1 && pitch >= Constants.pitch_mu_lower && pitch <= Constants.pitch_mu_upper;
+	}
+
+	/** @return the number of frames added */
+	public int getFrameCount() {
+		return frames;
+	}
+
+	/** @return the voiced segments closed so far, before the neighbor merging */
+	public List<SpeakerCluster> getSegments() {
+		return segments;
+	}
+
+	/**
+	 * The frames after the last complete segment are left out, like in the batch segmentation.
+	 * @return the voiced segments with the neighbors pre-clustered, null if there are none
+	 */
+	public List<SpeakerCluster> finish() {
+		if (segments.size() == 0) {
+			return null;
+		}
+		return NeighborMerger.merge(segments);
+	}
+
+}
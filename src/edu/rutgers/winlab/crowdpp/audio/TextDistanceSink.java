@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * The TextDistanceSink class
+ * Writes the distances as tab separated text lines, the layout of the legacy calibration files:
+ * "calDuration\tsegmentLength\tdistance" for the asymmetric and "segmentLength\tdistance" for the
+ * symmetric calibration.
+ */
+public class TextDistanceSink implements DistanceSink {
+
+	private final Writer out;
+	private final boolean withDuration;
+	private final StringBuilder line = new StringBuilder(64);
+
+	/**
+	 * @param filename the file, appended to like the legacy calibration
+	 * @param withDuration write the calibration duration column
+	 */
+	public TextDistanceSink(String filename, boolean withDuration) throws IOException {
+		this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename, true), "ISO-8859-1"), 1 << 16);
+		this.withDuration = withDuration;
+	}
+
+	@Override
+	public void write(double calDuration, int segmentLength, double distance) throws IOException {
+		line.setLength(0);
+		if (withDuration) {
+			line.append(calDuration).append('\t');
+		}
+		line.append(segmentLength).append('\t').append(distance).append('\n');
+		out.append(line);
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+}
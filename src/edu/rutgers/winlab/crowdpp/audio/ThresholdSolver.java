@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.content.Context;
+
+import edu.rutgers.winlab.crowdpp.util.Constants;
+import edu.rutgers.winlab.crowdpp.util.Histogram;
+
+/**
+ * The ThresholdSolver class
+ * Picks the MFCC distance thresholds from the calibration distances. The self (same speaker)
+ * and other (different speaker) distances are counted into fixed bin histograms per calibration
+ * duration and segment length, so the memory does not grow with the number of distances.
+ * <ul>
+ * <li>theta_s (mfcc_dist_same_*) is the largest bin edge with at most the target false merge rate
+ * of the other distances below it</li>
+ * <li>theta_d (mfcc_dist_diff_*) is the smallest bin edge with at most the target false split rate
+ * of the self distances at or above it</li>
+ * </ul>
+ * The thresholds are exact up to the bin width. The distances are added from one thread.
+ */
+public class ThresholdSolver {
+
+	/** the cosine distance is an angle in degrees */
+	public static final double DEFAULT_MAX = 180;
+	public static final double DEFAULT_BIN_WIDTH = 0.01;
+
+	private final double min, max, binWidth;
+
+	/** {self, other} histograms by calibration duration and segment length */
+	private final TreeMap<Double, TreeMap<Integer, Histogram[]>> histograms = new TreeMap<Double, TreeMap<Integer, Histogram[]>>();
+
+	public ThresholdSolver() {
+		this(0, DEFAULT_MAX, DEFAULT_BIN_WIDTH);
+	}
+
+	/** @param min, max, binWidth the histogram bins, distances outside [min, max) are only counted */
+	public ThresholdSolver(double min, double max, double binWidth) {
+		// fails early on invalid bins
+		new Histogram(min, max, binWidth);
+		this.min = min;
+		this.max = max;
+		this.binWidth = binWidth;
+	}
+
+	/** count the distance, calDuration is 0 for the symmetric calibration */
+	public void add(double calDuration, int segmentLength, boolean self, double distance) {
+		TreeMap<Integer, Histogram[]> byLength = histograms.get(calDuration);
+		if (byLength == null) {
+			byLength = new TreeMap<Integer, Histogram[]>();
+			histograms.put(calDuration, byLength);
+		}
+		Histogram[] h = byLength.get(segmentLength);
+		if (h == null) {
+			h = new Histogram[] {new Histogram(min, max, binWidth), new Histogram(min, max, binWidth)};
+			byLength.put(segmentLength, h);
+		}
+		h[self ? 0 : 1].add(distance);
+	}
+
+	/** @return the sink counting the self distances, e.g. for the CalibrationEngine */
+	public DistanceSink getSelfSink() {
+		return getSink(true);
+	}
+
+	/** @return the sink counting the other distances */
+	public DistanceSink getOtherSink() {
+		return getSink(false);
+	}
+
+	private DistanceSink getSink(final boolean self) {
+		return new DistanceSink() {
+			@Override
+			public void write(double calDuration, int segmentLength, double distance) {
+				add(calDuration, segmentLength, self, distance);
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	/** count the distances of a text (TextDistanceSink) or binary (.bin, BinaryDistanceSink) distance file */
+	public void addFile(String filename, boolean self) throws IOException {
+		if (filename.endsWith(".bin")) {
+			addBinaryFile(filename, self);
+			return;
+		}
+		BufferedReader br = new BufferedReader(new FileReader(filename), 1 << 16);
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				int t1 = line.indexOf('\t');
+				if (t1 < 0) {
+					continue;
+				}
+				int t2 = line.indexOf('\t', t1 + 1);
+				if (t2 < 0) {
+					// symmetric: segment length, distance
+					add(0, Integer.parseInt(line.substring(0, t1)), self, Double.parseDouble(line.substring(t1 + 1)));
+				}
+				else {
+					// asymmetric: calibration duration, segment length, distance
+					add(Double.parseDouble(line.substring(0, t1)), Integer.parseInt(line.substring(t1 + 1, t2)), self,
+							Double.parseDouble(line.substring(t2 + 1)));
+				}
+			}
+		} finally {
+			br.close();
+		}
+	}
+
+	private void addBinaryFile(String filename, boolean self) throws IOException {
+		FileInputStream fis = new FileInputStream(filename);
+		try {
+			FileChannel channel = fis.getChannel();
+			ByteBuffer buf = ByteBuffer.allocate(BinaryDistanceSink.RECORD_SIZE * 4096).order(ByteOrder.LITTLE_ENDIAN);
+			while (channel.read(buf) >= 0) {
+				buf.flip();
+				while (buf.remaining() >= BinaryDistanceSink.RECORD_SIZE) {
+					double calDuration = buf.getFloat();
+					int segmentLength = buf.getInt();
+					add(calDuration, segmentLength, self, buf.getDouble());
+				}
+				buf.compact();
+			}
+		} finally {
+			fis.close();
+		}
+	}
+
+	/** @return the self (or other) histogram, null if there are no such distances */
+	public Histogram getHistogram(double calDuration, int segmentLength, boolean self) {
+		TreeMap<Integer, Histogram[]> byLength = histograms.get(calDuration);
+		Histogram[] h = byLength == null ? null : byLength.get(segmentLength);
+		return h == null ? null : h[self ? 0 : 1];
+	}
+
+	/** @return theta_s for the target false merge rate, NaN without other distances */
+	public double getSameThreshold(double calDuration, int segmentLength, double falseMergeRate) {
+		Histogram other = getHistogram(calDuration, segmentLength, false);
+		return other == null ? Double.NaN : other.getLowerEdge(falseMergeRate);
+	}
+
+	/** @return theta_d for the target false split rate, NaN without self distances */
+	public double getDiffThreshold(double calDuration, int segmentLength, double falseSplitRate) {
+		Histogram self = getHistogram(calDuration, segmentLength, true);
+		return self == null ? Double.NaN : self.getUpperEdge(falseSplitRate);
+	}
+
+	/** @return the recorded calibration duration closest to the given one, NaN if there are none */
+	public double getNearestCalDuration(double calDuration) {
+		double best = Double.NaN;
+		for (double d : histograms.keySet()) {
+			if (Double.isNaN(best) || Math.abs(d - calDuration) < Math.abs(best - calDuration)) {
+				best = d;
+			}
+		}
+		return best;
+	}
+
+	/** print the thresholds and the rates they reach, per calibration duration and segment length */
+	public void report(PrintStream out, double falseMergeRate, double falseSplitRate) {
+		out.println("cal(s)  seg(s)      self     other  theta_s  false merge  split at theta_s  theta_d  false split  merge at theta_d");
+		for (Map.Entry<Double, TreeMap<Integer, Histogram[]>> e : histograms.entrySet()) {
+			for (Map.Entry<Integer, Histogram[]> f : e.getValue().entrySet()) {
+				Histogram self = f.getValue()[0], other = f.getValue()[1];
+				double same = getSameThreshold(e.getKey(), f.getKey(), falseMergeRate);
+				double diff = getDiffThreshold(e.getKey(), f.getKey(), falseSplitRate);
+				out.println(String.format(Locale.US, "%6.0f  %6d  %8d  %8d  %7.2f  %11.4f  %16.4f  %7.2f  %11.4f  %16.4f",
+						e.getKey(), f.getKey(), self.getTotal(), other.getTotal(),
+						same, other.getFractionBelow(same), 1 - self.getFractionBelow(same),
+						diff, 1 - self.getFractionBelow(diff), other.getFractionBelow(diff)));
+			}
+		}
+	}
+
+	/**
+	 * Solve the thresholds of the counting segment length and store them into the "config"
+	 * SharedPreferences: the semisupervised ones from the asymmetric calibration at the given
+	 * calibration duration, the unsupervised ones from the symmetric calibration. If theta_s is
+	 * above theta_d both are set to their middle.
+	 * @return {same_semi, diff_semi, same_un, diff_un}
+	 */
+	public static double[] save(Context c, ThresholdSolver asymmetric, ThresholdSolver symmetric, double calDuration,
+			int segmentLength, double falseMergeRate, double falseSplitRate) {
+		double[] t = solve(asymmetric, symmetric, calDuration, segmentLength, falseMergeRate, falseSplitRate);
+		Constants.saveThresholds(c, t[0], t[1], t[2], t[3]);
+		return t;
+	}
+
+	/** @return {same_semi, diff_semi, same_un, diff_un}, see save */
+	public static double[] solve(ThresholdSolver asymmetric, ThresholdSolver symmetric, double calDuration,
+			int segmentLength, double falseMergeRate, double falseSplitRate) {
+		double[] t = new double[] {
+				asymmetric.getSameThreshold(calDuration, segmentLength, falseMergeRate),
+				asymmetric.getDiffThreshold(calDuration, segmentLength, falseSplitRate),
+				symmetric.getSameThreshold(0, segmentLength, falseMergeRate),
+				symmetric.getDiffThreshold(0, segmentLength, falseSplitRate)};
+		for (int i = 0; i < t.length; i += 2) {
+			if (t[i] > t[i+1]) {
+				// separable: any threshold in between meets both rates, take the middle
+				t[i] = t[i+1] = (t[i] + t[i+1]) / 2;
+			}
+		}
+		for (double d : t) {
+			if (Double.isNaN(d)) {
+				throw new IllegalStateException("No calibration distances for " + calDuration + "s calibration and " + segmentLength + "s segments");
+			}
+		}
+		return t;
+	}
+
+	/** solve the thresholds from the distance files of a calibration directory, or from the engine directly */
+	public static void main(String[] args) throws IOException {
+		double falseMerge = 0.05, falseSplit = 0.05;
+		double binWidth = DEFAULT_BIN_WIDTH, max = DEFAULT_MAX;
+		int threads = 0;
+		String dir = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-m") && i + 1 < args.length) {
+				falseMerge = Double.parseDouble(args[++i]);
+			}
+			else if (args[i].equals("-s") && i + 1 < args.length) {
+				falseSplit = Double.parseDouble(args[++i]);
+			}
+			else if (args[i].equals("-w") && i + 1 < args.length) {
+				binWidth = Double.parseDouble(args[++i]);
+			}
+			else if (args[i].equals("-x") && i + 1 < args.length) {
+				max = Double.parseDouble(args[++i]);
+			}
+			else if (args[i].equals("-e") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if (dir == null && !args[i].startsWith("-")) {
+				dir = args[i];
+			}
+			else {
+				dir = null;
+				break;
+			}
+		}
+		if (dir == null) {
+			System.err.println("usage: ThresholdSolver [-m false-merge] [-s false-split] [-w bin-width] [-x max] [-e threads] dir\n"
+					+ "  reads the distance_{self,other}_{asymmetric,symmetric}.{bin,txt} files of dir, or with -e\n"
+					+ "  runs the CalibrationEngine on the MFCC files of dir without writing any distances\n"
+					+ "  -m, -s  target false merge and false split rates (default 0.05)\n"
+					+ "  -w, -x  histogram bin width and upper bound (default " + DEFAULT_BIN_WIDTH + ", " + DEFAULT_MAX + ")");
+			System.exit(1);
+		}
+
+		ThresholdSolver asymmetric = new ThresholdSolver(0, max, binWidth);
+		ThresholdSolver symmetric = new ThresholdSolver(0, max, binWidth);
+		if (threads > 0) {
+			CalibrationEngine engine = new CalibrationEngine(dir, threads);
+			engine.asymmetric(CalibrationEngine.CAL_DURATIONS, asymmetric.getSelfSink(), asymmetric.getOtherSink());
+			engine.symmetric(symmetric.getSelfSink(), symmetric.getOtherSink());
+		}
+		else {
+			for (String name : new String[] {"asymmetric", "symmetric"}) {
+				ThresholdSolver solver = name.equals("asymmetric") ? asymmetric : symmetric;
+				for (boolean self : new boolean[] {true, false}) {
+					// the binary file if there is one, both would count the distances twice
+					File f = new File(dir, "distance_" + (self ? "self_" : "other_") + name + ".bin");
+					if (!f.exists()) {
+						f = new File(dir, "distance_" + (self ? "self_" : "other_") + name + ".txt");
+					}
+					if (f.exists()) {
+						solver.addFile(f.getPath(), self);
+					}
+				}
+			}
+		}
+
+		System.out.println("asymmetric (semisupervised)");
+		asymmetric.report(System.out, falseMerge, falseSplit);
+		System.out.println();
+		System.out.println("symmetric (unsupervised)");
+		symmetric.report(System.out, falseMerge, falseSplit);
+		System.out.println();
+
+		double calDuration = asymmetric.getNearestCalDuration(Constants.cal_duration_sec_lower);
+		int segmentLength = (int) Math.round(Constants.seg_duration_sec);
+		double[] t = solve(asymmetric, symmetric, calDuration, segmentLength, falseMerge, falseSplit);
+		System.out.println("config for " + calDuration + "s calibration and " + segmentLength + "s segments");
+		System.out.println(String.format(Locale.US, "mfcc_dist_same_semi = %.4f", t[0]));
+		System.out.println(String.format(Locale.US, "mfcc_dist_diff_semi = %.4f", t[1]));
+		System.out.println(String.format(Locale.US, "mfcc_dist_same_un = %.4f", t[2]));
+		System.out.println(String.format(Locale.US, "mfcc_dist_diff_un = %.4f", t[3]));
+	}
+
+}
@@ -22,11 +22,10 @@
 
 package edu.rutgers.winlab.crowdpp.audio;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.Arrays;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
 
 /**
  * Yin class
@@ -38,21 +37,11 @@ import java.io.InputStream;
 
 public class Yin {
 
-	/** Used to start and stop real time annotations. */
-	private static Yin yinInstance;
-
 	/** The YIN threshold value (see paper) */
 	private final double threshold = 0.15;
 
 	private final int bufferSize;
-	private final int overlapSize;
 	private final float sampleRate;
-	
-	/**
-	 * A boolean to start and stop the algorithm.
-	 * Practical for real time processing of data.
-	 */
-	private volatile boolean running;
 
 	/** The original input buffer */
 	private final float[] inputBuffer;
@@ -63,17 +52,43 @@ public class Yin {
 	 */
 	private final float[] yinBuffer;
 
-	private Yin(float sampleRate) {
+	/** FFT and buffers of the FFT based difference function, null for the direct one */
+	private final DoubleFFT_1D fft;
+	private final double[] fftBuffer, frameFft, energy;
+
+	Yin(float sampleRate, int bufferSize) {
+		this(sampleRate, bufferSize, false);
+	}
+
+	/**
+	 * @param fftDifference compute the difference function through an FFT autocorrelation in O(N log N)
+	 * instead of the direct O(N^2) loop, which is kept as the reference
+	 */
+	Yin(float sampleRate, int bufferSize, boolean fftDifference) {
 		this.sampleRate = sampleRate;
-		bufferSize = 256; // 1s = 8000 * 2 bytes = 8000 float, so 32 ms = 8 * 32 = 256
-		overlapSize = bufferSize / 2;
-		running = true;
+		this.bufferSize = bufferSize;
 		inputBuffer = new float[bufferSize];
 		yinBuffer = new float[bufferSize/2];
+		if (fftDifference) {
+			// j + tau < bufferSize, so a power of 2 not below bufferSize needs no zero padding against wrap around
+			int n = Integer.highestOneBit(Math.max(bufferSize - 1, 1)) << 1;
+			fft = new DoubleFFT_1D(n);
+			fftBuffer = new double[n];
+			frameFft = new double[n];
+			energy = new double[bufferSize + 1];
+		}
+		else {
+			fft = null;
+			fftBuffer = frameFft = energy = null;
+		}
 	}
 
 	/** Implements the difference function as described in step 2 of the YIN paper */
 	private void difference(){
+		if (fft != null) {
+			fftDifference();
+			return;
+		}
 		float delta;
 		for(int tau = 0; tau < yinBuffer.length; tau++) {
 			yinBuffer[tau] = 0;
@@ -87,6 +102,51 @@ public class Yin {
 		}
 	}
 
+	/**
+	 * The difference function through the autocorrelation:
+	 * d(tau) = sum x[j]^2 + sum x[j+tau]^2 - 2 sum x[j] x[j+tau], j < W.
+	 * The squared sums come from prefix sums, the cross term is the correlation of the first W samples
+	 * with the whole buffer, IFFT(conj(FFT(x[0..W))) * FFT(x)).
+	 */
+	private void fftDifference() {
+		int w = yinBuffer.length;
+		int n = fftBuffer.length;
+
+		energy[0] = 0;
+		for (int i = 0; i < bufferSize; i++) {
+			energy[i+1] = energy[i] + (double) inputBuffer[i] * inputBuffer[i];
+		}
+
+		for (int i = 0; i < bufferSize; i++) {
+			frameFft[i] = inputBuffer[i];
+		}
+		Arrays.fill(frameFft, bufferSize, n, 0);
+		fft.realForward(frameFft);
+		for (int i = 0; i < w; i++) {
+			fftBuffer[i] = inputBuffer[i];
+		}
+		Arrays.fill(fftBuffer, w, n, 0);
+		fft.realForward(fftBuffer);
+
+		// conj(A) * X in the packed format: [0] and [1] are the real values at 0 and n/2
+		fftBuffer[0] = fftBuffer[0] * frameFft[0];
+		fftBuffer[1] = fftBuffer[1] * frameFft[1];
+		for (int k = 2; k < n; k += 2) {
+			double ar = fftBuffer[k], ai = fftBuffer[k+1];
+			double xr = frameFft[k], xi = frameFft[k+1];
+			fftBuffer[k] = ar * xr + ai * xi;
+			fftBuffer[k+1] = ar * xi - ai * xr;
+		}
+		fft.realInverse(fftBuffer, true);
+
+		yinBuffer[0] = 0;
+		for (int tau = 1; tau < w; tau++) {
+			double d = energy[w] + (energy[tau + w] - energy[tau]) - 2 * fftBuffer[tau];
+			// rounding can leave tiny negative values where the frame is periodic
+			yinBuffer[tau] = d > 0 ? (float) d : 0;
+		}
+	}
+
 	/**
 	 * The cumulative mean normalized difference function as described in step 3 of the YIN paper
 	 * <br><code>
@@ -167,39 +227,25 @@ public class Yin {
 		return pitchInHertz;
 	}
 	
+	/**
+	 * Estimate the pitch of a single frame of bufferSize samples.
+	 * @return a pitch value in Hz or -1 if no pitch is detected.
+	 */
+	float getPitch(float[] frame) {
+		System.arraycopy(frame, 0, inputBuffer, 0, bufferSize);
+		return getPitch();
+	}
+	
+	/** write the pitch track of the 8kHz wav file into fileName.YIN.pitch.txt */
 	public static void writeFile(String fileName) throws IOException {
-		InputStream is = new FileInputStream(new File(fileName));
-		AudioFloatInputStream afis = AudioFloatInputStream.getInputStream(is);
-		Yin.processStream(afis, fileName);
+		PitchTracker tracker = new PitchTracker();
+		PitchTracker.writeText(fileName + ".YIN.pitch.txt", tracker.processFile(fileName));
 	}
 
+	/** write the pitch track of the 8kHz stream into filename.YIN.pitch.txt */
 	public static void processStream(AudioFloatInputStream afis, String filename) throws IOException {
-		float sampleRate = 8000;
-		yinInstance = new Yin(sampleRate);
-		int bufferStepSize = yinInstance.bufferSize - yinInstance.overlapSize;
-
-		// read full buffer
-		boolean hasMoreFloats = afis.read(yinInstance.inputBuffer, 0, yinInstance.bufferSize) != -1;
-		File sdFile = new File(filename + ".YIN.pitch.txt");
-		FileOutputStream fos = new FileOutputStream(sdFile, true);
-				
-		while(hasMoreFloats && yinInstance.running) {
-			float pitch = yinInstance.getPitch();
-			String text = pitch + "\n";			
-			fos.write(text.getBytes());
-			// slide buffer with predefined overlap
-			for(int i = 0 ; i < bufferStepSize ; i++) {
-				yinInstance.inputBuffer[i] = yinInstance.inputBuffer[i+yinInstance.overlapSize];
-			}
-			hasMoreFloats = afis.read(yinInstance.inputBuffer, yinInstance.overlapSize, bufferStepSize) != -1;
-		}
-		fos.close();
-	}
-
-	/** Stops real time annotation. */
-	public static void stop() {
-		if (yinInstance != null)
-			yinInstance.running = false;
+		PitchTracker tracker = new PitchTracker();
+		PitchTracker.writeText(filename + ".YIN.pitch.txt", tracker.processStream(afis));
 	}
 
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.audio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The YinBenchmark class
+ * Checks the FFT based YIN difference function against the direct one, the reference, on synthetic
+ * signals and on the given recordings, and measures the throughput of both for the window sizes of
+ * the supported sample rates. A signal fails the check if the voicing decisions agree on fewer than
+ * MIN_SAME_VOICING of the frames or a pitch differs by more than MAX_PITCH_DIFF, the run then exits
+ * with status 1. Run on a desktop JVM:
+ * <pre>
+ * java edu.rutgers.winlab.crowdpp.audio.YinBenchmark [8kHz 16bit wav-file ...]
+ * </pre>
+ */
+public class YinBenchmark {
+
+	/** 32ms windows at 8, 16 and 44.1 kHz */
+	private static final int[] RATES = {8000, 16000, 44100};
+
+	/** the least share of frames with the same voicing decision, a frame right at the threshold may flip */
+	private static final double MIN_SAME_VOICING = 0.999;
+
+	/** the largest pitch difference in Hz on the frames voiced by both, float rounding only */
+	private static final double MAX_PITCH_DIFF = 0.01;
+
+	/** keeps the timed results alive */
+	private static float sink;
+
+	public static void main(String[] args) throws IOException {
+		System.out.println("signal            rate   window  frames  voiced  same voicing  max pitch diff (Hz)  check");
+		int failed = 0;
+		for (int rate : RATES) {
+			int window = rate * 32 / 1000;
+			for (int type = 0; type < 4; type++) {
+				if (!compare(SIGNALS[type], rate, window, synthesize(type, rate, 10, new Random(type)))) {
+					failed++;
+				}
+			}
+		}
+		for (String wav : args) {
+			if (!compare(new File(wav).getName(), 8000, 256, read(wav))) {
+				failed++;
+			}
+		}
+		if (failed > 0) {
+			System.out.println(failed + " signals outside the tolerance of " + 100 * MIN_SAME_VOICING + "% same voicing and " 
+					+ MAX_PITCH_DIFF + " Hz pitch difference");
+		}
+
+		System.out.println();
+		System.out.println("rate   window  direct frames/s  fft frames/s");
+		for (int rate : RATES) {
+			int window = rate * 32 / 1000;
+			float[] signal = synthesize(1, rate, 20, new Random(1));
+			double direct = throughput(new Yin(rate, window, false), signal, window);
+			double fft = throughput(new Yin(rate, window, true), signal, window);
+			System.out.println(String.format("%-6d %6d %16.0f %13.0f", rate, window, direct, fft));
+		}
+		if (sink == 0) {
+			System.out.println();
+		}
+		if (failed > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static final String[] SIGNALS = {"sine", "voice", "noise", "voice+noise"};
+
+	/** seconds of a sine, a pulse train through two formants, white noise, or the pulse train in noise */
+	private static float[] synthesize(int type, int rate, int seconds, Random random) {
+		float[] signal = new float[rate * seconds];
+		double phase = 0, y1 = 0, y2 = 0, z1 = 0, z2 = 0;
+		for (int i = 0; i < signal.length; i++) {
+			// the pitch glides between 90 and 300 Hz
+			double f0 = 195 + 105 * Math.sin(2 * Math.PI * i / (rate * 2.5));
+			phase += f0 / rate;
+			double s = 0;
+			if (type == 0) {
+				s = 0.5 * Math.sin(2 * Math.PI * phase);
+			}
+			else if (type == 2) {
+				s = 0.3 * random.nextGaussian();
+			}
+			else {
+				double pulse = phase >= 1 ? 1 : 0;
+				phase -= Math.floor(phase);
+				// two resonators at 700 and 1200 Hz
+				double x = resonate(pulse, 700, rate, y1, y2);
+				y2 = y1; y1 = x;
+				double v = resonate(x, 1200, rate, z1, z2);
+				z2 = z1; z1 = v;
+				s = 0.05 * v;
+				if (type == 3) {
+					s += 0.02 * random.nextGaussian();
+				}
+			}
+			signal[i] = (float) Math.max(-1, Math.min(1, s));
+		}
+		return signal;
+	}
+
+	private static double resonate(double x, double freq, int rate, double y1, double y2) {
+		double r = 0.97;
+		return x + 2 * r * Math.cos(2 * Math.PI * freq / rate) * y1 - r * r * y2;
+	}
+
+	private static float[] read(String wav) throws IOException {
+		InputStream is = new FileInputStream(wav);
+		AudioFloatInputStream afis = AudioFloatInputStream.getInputStream(is);
+		List<float[]> blocks = new ArrayList<float[]>();
+		int total = 0;
+		float[] block = new float[8000];
+		int n;
+		while ((n = afis.read(block, 0, block.length)) > 0) {
+			float[] copy = new float[n];
+			System.arraycopy(block, 0, copy, 0, n);
+			blocks.add(copy);
+			total += n;
+		}
+		afis.close();
+		float[] signal = new float[total];
+		int pos = 0;
+		for (float[] b : blocks) {
+			System.arraycopy(b, 0, signal, pos, b.length);
+			pos += b.length;
+		}
+		return signal;
+	}
+
+	/** 
+	 * run both difference functions on the frames with half a window shift
+	 * @return true if the FFT one is within the tolerance of the direct one
+	 */
+	private static boolean compare(String name, int rate, int window, float[] signal) {
+		Yin direct = new Yin(rate, window, false);
+		Yin fft = new Yin(rate, window, true);
+		float[] frame = new float[window];
+		int frames = 0, voiced = 0, same = 0;
+		double maxDiff = 0;
+		for (int start = 0; start + window <= signal.length; start += window / 2) {
+			System.arraycopy(signal, start, frame, 0, window);
+			float a = direct.getPitch(frame);
+			float b = fft.getPitch(frame);
+			frames++;
+			if (a != -1) {
+				voiced++;
+			}
+			if ((a == -1) == (b == -1)) {
+				same++;
+				if (a != -1) {
+					maxDiff = Math.max(maxDiff, Math.abs(a - b));
+				}
+			}
+		}
+		boolean pass = frames > 0 && same >= MIN_SAME_VOICING * frames && maxDiff <= MAX_PITCH_DIFF;
+		System.out.println(String.format("%-16s %6d %7d %7d %7d %12.2f%% %20.4g  %s", name, rate, window, frames, voiced, 100. * same / frames, maxDiff, 
+				pass ? "pass" : "FAIL"));
+		return pass;
+	}
+
+	/** @return the frames per second, best of five rounds after a warm up */
+	private static double throughput(Yin yin, float[] signal, int window) {
+		float[] frame = new float[window];
+		long best = Long.MAX_VALUE;
+		int frames = 0;
+		for (int round = 0; round < 6; round++) {
+			frames = 0;
+			long t0 = System.nanoTime();
+			for (int start = 0; start + window <= signal.length; start += window / 2) {
+				System.arraycopy(signal, start, frame, 0, window);
+				sink += yin.getPitch(frame);
+				frames++;
+			}
+			long t = System.nanoTime() - t0;
+			if (round > 0) {
+				best = Math.min(best, t);
+			}
+		}
+		return frames * 1e9 / best;
+	}
+
+}
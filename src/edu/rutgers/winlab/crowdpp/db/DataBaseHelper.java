@@ -23,6 +23,7 @@
 package edu.rutgers.winlab.crowdpp.db;
 
 import edu.rutgers.winlab.crowdpp.db.DataBaseTable.DiaryTable;
+import edu.rutgers.winlab.crowdpp.db.DataBaseTable.JobTable;
 import edu.rutgers.winlab.crowdpp.db.DataBaseTable.TestTable;
 import edu.rutgers.winlab.crowdpp.util.Constants;
 
@@ -39,7 +40,7 @@ import android.util.Log;
  */
 public class DataBaseHelper extends SQLiteOpenHelper {
 	public final static String dbName = Constants.dbName;
-	public final static int dbVersion = 2;	
+	public final static int dbVersion = 5;	
 	
 	public DataBaseHelper(Context context) {
 		super(context, dbName, null, dbVersion);
@@ -57,7 +58,8 @@ public class DataBaseHelper extends SQLiteOpenHelper {
 																+ DiaryTable.COUNT + " INTEGER, "
 																+ DiaryTable.PCT + " REAL, "
 																+ DiaryTable.LAT + " REAL, "
-																+ DiaryTable.LONG + " REAL"
+																+ DiaryTable.LONG + " REAL, "
+																+ DiaryTable.INTERVAL + " REAL"
 																+ ");");
 		
 		db.execSQL("CREATE TABLE " 	+ TestTable.TABLE_NAME 
@@ -72,14 +74,51 @@ public class DataBaseHelper extends SQLiteOpenHelper {
 																+ TestTable.LAT + " REAL, "
 																+ TestTable.LONG + " REAL"
 																+ ");");
+		
+		createJobTable(db);
+	}
+	
+	private void createJobTable(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE IF NOT EXISTS " 	+ JobTable.TABLE_NAME 
+																+ " ("
+																+ JobTable._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+																+ JobTable.SYS_TIME + " INTEGER, "
+																+ JobTable.DATE + " TEXT, "
+																+ JobTable.START + " TEXT, "
+																+ JobTable.END + " TEXT, "
+																+ JobTable.WAV + " TEXT, "
+																+ JobTable.STATE + " INTEGER, "
+																+ JobTable.ATTEMPTS + " INTEGER, "
+																+ JobTable.REFINED + " INTEGER, "
+																+ JobTable.LAT + " REAL, "
+																+ JobTable.LONG + " REAL, "
+																+ JobTable.INTERVAL + " TEXT, "
+																+ JobTable.DURATION + " TEXT, "
+																+ JobTable.SILENT + " INTEGER"
+																+ ");");
 	}
 
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-		String sql = "drop table if exists " + DiaryTable.TABLE_NAME;
-		db.execSQL(sql);		
-		sql = "drop table if exists " + TestTable.TABLE_NAME;
-		db.execSQL(sql);
-		onCreate(db);
+		if (oldVersion < 2) {
+			String sql = "drop table if exists " + DiaryTable.TABLE_NAME;
+			db.execSQL(sql);		
+			sql = "drop table if exists " + TestTable.TABLE_NAME;
+			db.execSQL(sql);
+			onCreate(db);
+			return;
+		}
+		// version 3 adds the job queue, the diary is kept
+		if (oldVersion < 3) {
+			createJobTable(db);
+		}
+		// version 4 adds the sampling interval to the diary, the old records have none
+		if (oldVersion < 4) {
+			db.execSQL("ALTER TABLE " + DiaryTable.TABLE_NAME + " ADD COLUMN " + DiaryTable.INTERVAL + " REAL DEFAULT -1");
+		}
+		// version 5 adds the silent probe to the job queue, a job table created above has it already
+		if (oldVersion >= 3 && oldVersion < 5) {
+			db.execSQL("ALTER TABLE " + JobTable.TABLE_NAME + " ADD COLUMN " + JobTable.SILENT + " INTEGER DEFAULT 0");
+		}
 	}
 
 	@Override
@@ -88,6 +127,11 @@ public class DataBaseHelper extends SQLiteOpenHelper {
 	}
 	
 	public long insertDiary(SQLiteDatabase db, long sys_time, String date, String start, String end, int count, double percentage, double latitude, double longitude) {
+		return insertDiary(db, sys_time, date, start, end, count, percentage, latitude, longitude, -1);
+	}
+	
+	/** @param interval the minutes until the next recording */
+	public long insertDiary(SQLiteDatabase db, long sys_time, String date, String start, String end, int count, double percentage, double latitude, double longitude, double interval) {
 		ContentValues cv = new ContentValues();
 		db.beginTransaction(); 
 		try {
@@ -99,6 +143,7 @@ public class DataBaseHelper extends SQLiteOpenHelper {
 			cv.put(DiaryTable.PCT, percentage);
 			cv.put(DiaryTable.LAT, latitude);
 			cv.put(DiaryTable.LONG, longitude);
+			cv.put(DiaryTable.INTERVAL, interval);
 			db.setTransactionSuccessful();
 		} 
 		finally {
@@ -156,6 +201,97 @@ public class DataBaseHelper extends SQLiteOpenHelper {
 		return db.insert(TestTable.TABLE_NAME, null, cv);	
 	}
 
+	/** queue a recording that has just started, @return the job id */
+	public long insertJob(SQLiteDatabase db, long sys_time, String date, String start, String wav, String interval, String duration) {
+		ContentValues cv = new ContentValues();
+		cv.put(JobTable.SYS_TIME, sys_time);
+		cv.put(JobTable.DATE, date);
+		cv.put(JobTable.START, start);
+		cv.put(JobTable.WAV, wav);
+		cv.put(JobTable.STATE, JobTable.STATE_RECORDING);
+		cv.put(JobTable.ATTEMPTS, 0);
+		cv.put(JobTable.REFINED, 0);
+		cv.put(JobTable.LAT, -1.0);
+		cv.put(JobTable.LONG, -1.0);
+		cv.put(JobTable.INTERVAL, interval);
+		cv.put(JobTable.DURATION, duration);
+		cv.put(JobTable.SILENT, 0);
+		return db.insert(JobTable.TABLE_NAME, null, cv);
+	}
+
+	/** the recording of the job is complete and waits to be counted, silent if the probe heard no speech in it */
+	public void updateJobRecorded(SQLiteDatabase db, long id, String end, double latitude, double longitude, boolean silent) {
+		ContentValues cv = new ContentValues();
+		cv.put(JobTable.END, end);
+		cv.put(JobTable.LAT, latitude);
+		cv.put(JobTable.LONG, longitude);
+		cv.put(JobTable.SILENT, silent ? 1 : 0);
+		cv.put(JobTable.STATE, JobTable.STATE_PENDING);
+		db.update(JobTable.TABLE_NAME, cv, JobTable._ID + "=" + id, null);
+	}
+
+	/** the recordings cut off by a killed service are counted as far as they got */
+	public void updateJobsRecording(SQLiteDatabase db) {
+		ContentValues cv = new ContentValues();
+		cv.put(JobTable.STATE, JobTable.STATE_PENDING);
+		db.update(JobTable.TABLE_NAME, cv, JobTable.STATE + "=" + JobTable.STATE_RECORDING, null);
+	}
+
+	public void updateJobAttempts(SQLiteDatabase db, long id, int attempts) {
+		ContentValues cv = new ContentValues();
+		cv.put(JobTable.ATTEMPTS, attempts);
+		db.update(JobTable.TABLE_NAME, cv, JobTable._ID + "=" + id, null);
+	}
+
+	/** the owner's profile was refined with the job, a retry must not refine it again */
+	public void updateJobRefined(SQLiteDatabase db, long id) {
+		ContentValues cv = new ContentValues();
+		cv.put(JobTable.REFINED, 1);
+		db.update(JobTable.TABLE_NAME, cv, JobTable._ID + "=" + id, null);
+	}
+
+	/** @return the pending jobs, oldest first */
+	public Cursor queryPendingJobs(SQLiteDatabase db) {
+		String[] cols = new String[] {JobTable._ID, JobTable.SYS_TIME, JobTable.DATE, JobTable.START, JobTable.END, 
+																	JobTable.WAV, JobTable.ATTEMPTS, JobTable.REFINED, JobTable.LAT, JobTable.LONG,
+																	JobTable.INTERVAL, JobTable.DURATION, JobTable.SILENT};
+		String sel = JobTable.STATE + "=" + JobTable.STATE_PENDING;
+		return db.query(JobTable.TABLE_NAME, cols, sel, null, null, null, JobTable.ORDER);
+	}
+
+	/** 
+	 * Insert the diary record of the job and remove the job in one transaction, so a retried job is
+	 * never recorded twice. A job that is already gone is not recorded again.
+	 * @return the row id of the diary record, -1 if the job was already done or nothing was written
+	 */
+	public long completeJob(SQLiteDatabase db, long id, long sys_time, String date, String start, String end, int count, double percentage, double latitude, double longitude, double interval) {
+		db.beginTransaction(); 
+		try {
+			if (db.delete(JobTable.TABLE_NAME, JobTable._ID + "=" + id, null) == 0) {
+				return -1;
+			}
+			ContentValues cv = new ContentValues();
+			cv.put(DiaryTable.SYS_TIME, sys_time);
+			cv.put(DiaryTable.DATE, date);
+			cv.put(DiaryTable.START, start);
+			cv.put(DiaryTable.END, end);
+			cv.put(DiaryTable.COUNT, count);
+			cv.put(DiaryTable.PCT, percentage);
+			cv.put(DiaryTable.LAT, latitude);
+			cv.put(DiaryTable.LONG, longitude);
+			cv.put(DiaryTable.INTERVAL, interval);
+			long row = db.insert(DiaryTable.TABLE_NAME, null, cv);
+			if (row < 0) {
+				return -1;
+			}
+			db.setTransactionSuccessful();
+			return row;
+		} 
+		finally {
+			db.endTransaction();
+		}
+	}
+
 	public Cursor queryTest(SQLiteDatabase db){
 		String tb = TestTable.TABLE_NAME;
 		String[] cols = new String[] {TestTable.DATE, 
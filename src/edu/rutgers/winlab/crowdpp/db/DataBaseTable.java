@@ -35,7 +35,7 @@ public class DataBaseTable {
 
 	/** The database table for social diary */
   public static final class DiaryTable implements BaseColumns {
-  	// CREATE TABLE Diary (id INTEGER PRIMARY KEY AUTOINCREMENT, time INTEGER, date TEXT, start TEXT, end TEXT, count INTEGER, percentage REAL, latitude REAL, longitude REAL)
+  	// CREATE TABLE Diary (id INTEGER PRIMARY KEY AUTOINCREMENT, time INTEGER, date TEXT, start TEXT, end TEXT, count INTEGER, percentage REAL, latitude REAL, longitude REAL, interval REAL)
     private DiaryTable() {}
 
     public static final String TABLE_NAME = "Diary";
@@ -48,6 +48,8 @@ public class DataBaseTable {
     public static final String PCT 				= "percentage";
     public static final String LAT 				= "latitude";
     public static final String LONG 			= "longitude";
+    /** the minutes until the next recording, 60 / interval recordings per hour; -1 if unknown */
+    public static final String INTERVAL 	= "interval";
 
     public static final String ORDER 			= "time ASC";
   }
@@ -71,4 +73,33 @@ public class DataBaseTable {
     public static final String ORDER 			= "time DESC";
   }
   
+	/** The database table for the recordings waiting to be counted */
+  public static final class JobTable implements BaseColumns {
+  	// CREATE TABLE Job (id INTEGER PRIMARY KEY AUTOINCREMENT, time INTEGER, date TEXT, start TEXT, end TEXT, wav TEXT, state INTEGER, attempts INTEGER, refined INTEGER, latitude REAL, longitude REAL, interval TEXT, duration TEXT, silent INTEGER)
+    private JobTable() {}
+      
+    public static final String TABLE_NAME = "Job";
+    
+    public static final String SYS_TIME 	= "time";
+    public static final String DATE 			= "date";
+    public static final String START 			= "start";
+    public static final String END 				= "end";
+    public static final String WAV 				= "wav";
+    public static final String STATE 			= "state";
+    public static final String ATTEMPTS 	= "attempts";
+    public static final String REFINED 		= "refined";
+    public static final String LAT 				= "latitude";
+    public static final String LONG 			= "longitude";
+    public static final String INTERVAL 	= "interval";
+    public static final String DURATION 	= "duration";
+    public static final String SILENT 		= "silent";
+
+    /** the recording is still going, or was cut off if the service was killed */
+    public static final int STATE_RECORDING = 0;
+    /** the recording is complete and waits to be counted */
+    public static final int STATE_PENDING 	= 1;
+
+    public static final String ORDER 			= "_id ASC";
+  }
+  
 }
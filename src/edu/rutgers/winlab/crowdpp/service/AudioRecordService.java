@@ -38,6 +38,14 @@ import android.widget.Toast;
 public class AudioRecordService extends Service {
 	AudioRecorder extAudioRecorder = null;
 	
+	/** receiver of the recorded buffers for the next recording, consumed when the recording starts */
+	private static AudioRecorder.OnBufferReadyListener bufferListener = null;
+	
+	/** set the listener receiving the buffers of the next recording, call before starting the service */
+	public static synchronized void setBufferListener(AudioRecorder.OnBufferReadyListener listener) {
+		bufferListener = listener;
+	}
+	
 	@Override 
 	public void onCreate()	{
 		
@@ -46,10 +54,17 @@ public class AudioRecordService extends Service {
 	@Override
 	public int onStartCommand(Intent intent, int flags, int startId) {
 		Bundle bundle = intent.getExtras();
+		// the audio path may be null when the buffers are only streamed to the listener
 		String filename = bundle.getString("audiopath");
 		// Uncompressed recording (WAV)
 		extAudioRecorder = AudioRecorder.getInstanse(false); 
     extAudioRecorder.setOutputFile(filename);  				
+    synchronized (AudioRecordService.class) {
+    	if (bufferListener != null) {
+    		extAudioRecorder.setBufferListener(bufferListener);
+    		bufferListener = null;
+    	}
+    }
     extAudioRecorder.prepare();
     extAudioRecorder.start();
     Log.i("AudioRecordService", "Start audio recording");		    
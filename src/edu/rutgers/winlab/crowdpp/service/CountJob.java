@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.service;
+
+import java.util.List;
+
+import edu.rutgers.winlab.crowdpp.audio.FidelityProfile;
+import edu.rutgers.winlab.crowdpp.audio.LiveFeatureExtractor;
+import edu.rutgers.winlab.crowdpp.audio.SpeakerCluster;
+
+/**
+ * The CountJob class
+ * The state of one recording and counting cycle of the SpeakerCountService. Every cycle has its own
+ * job, so the next recording can start while an earlier job is still extracted, counted or stored.
+ * A job is only touched by one stage at a time. With the durable queue the job is also a row of the
+ * Job table until its diary record is written, so it is counted again after the service is killed.
+ */
+class CountJob {
+
+	/** the start of the recording in ms */
+	final long time;
+	/** the path of the recording, only written when not streaming or when the raw data is kept */
+	final String wavFile;
+	final String date, start;
+	/** the interval until the next recording and the duration when the cycle started, in minutes */
+	final String interval_min, duration_min;
+	String end;
+
+	/** the row in the Job table, -1 if the job is not queued */
+	long id = -1;
+	/** the failed extractions so far */
+	int attempts = 0;
+	/** the owner's profile was already refined with this recording */
+	boolean refined = false;
+	/** the probe at the start of the recording heard no speech, so it was stopped */
+	volatile boolean silent = false;
+
+	/** the fidelity the segments are extracted at, picked when the features are extracted */
+	FidelityProfile fidelity = FidelityProfile.FULL;
+
+	/** extracts the features while recording in streaming mode, null otherwise */
+	LiveFeatureExtractor extractor;
+
+	/** the features, either all the frames or only the voiced segments */
+	double[][] mfcc, pitch;
+	List<SpeakerCluster> segments;
+	boolean extracted = false;
+
+	// default values when the data is not available
+	int speaker_count = 0;
+	double percentage = -1;
+	// the speech percentage of the speakers enrolled besides the owner, null if there are none
+	double[] enrolled_percentage = null;
+	double latitude = -1;
+	double longitude = -1;
+
+	CountJob(long time, String wavFile, String date, String start, String interval_min, String duration_min) {
+		this.time = time;
+		this.wavFile = wavFile;
+		this.date = date;
+		this.start = start;
+		this.interval_min = interval_min;
+		this.duration_min = duration_min;
+	}
+
+	/** a queued job, read back from the Job table */
+	CountJob(long id, long time, String wavFile, String date, String start, String end, int attempts, boolean refined, 
+			double latitude, double longitude, String interval_min, String duration_min, boolean silent) {
+		this(time, wavFile, date, start, interval_min, duration_min);
+		this.id = id;
+		this.end = end;
+		this.attempts = attempts;
+		this.refined = refined;
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.silent = silent;
+	}
+
+	/** @return the interval until the next recording in minutes, -1 if unknown */
+	double getInterval() {
+		try {
+			return Double.parseDouble(interval_min);
+		} catch (NumberFormatException e) {
+			return -1;
+		} catch (NullPointerException e) {
+			return -1;
+		}
+	}
+
+}
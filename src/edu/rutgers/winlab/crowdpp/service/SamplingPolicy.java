@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.service;
+
+/**
+ * The SamplingPolicy class
+ * Adapts the interval between two recordings of the SpeakerCountService to the recent counts:
+ * a changed count goes straight to the floor, a conversation that goes on (at least two speakers,
+ * same count) divides the interval by the backoff factor, and silence or a stable count multiplies
+ * it, up to the ceiling. The results are taken in the order the recordings were made, a result
+ * older than the last one taken (e.g. a deferred recording) is ignored.
+ */
+public class SamplingPolicy {
+
+	private final double floor, ceiling, backoff;
+	private double interval;
+
+	/** the count and the start time of the latest recording taken, -1 before the first */
+	private int lastCount = -1;
+	private long lastTime = Long.MIN_VALUE;
+
+	/**
+	 * @param base the interval to start with, in minutes
+	 * @param floor the shortest interval, it is raised to the duration of a recording
+	 * @param ceiling the longest interval
+	 * @param duration the duration of a recording in minutes
+	 * @param backoff the factor the interval changes by, greater than 1
+	 */
+	public SamplingPolicy(double base, double floor, double ceiling, double duration, double backoff) {
+		if (backoff <= 1) {
+			throw new IllegalArgumentException("Backoff " + backoff + " is not greater than 1");
+		}
+		// the user's interval always lies within the range
+		this.floor = Math.max(Math.min(floor, base), duration);
+		this.ceiling = Math.max(Math.max(ceiling, base), this.floor);
+		this.backoff = backoff;
+		this.interval = clamp(base);
+	}
+
+	private double clamp(double minutes) {
+		return Math.min(ceiling, Math.max(floor, minutes));
+	}
+
+	/**
+	 * Take the result of a recording.
+	 * @param time the start of the recording in ms, older results are ignored
+	 * @param count the speaker count, 0 if there was no speech
+	 */
+	public synchronized void onResult(long time, int count) {
+		if (time < lastTime) {
+			return;
+		}
+		if (lastCount >= 0 && count != lastCount) {
+			interval = floor;
+		}
+		else if (count >= 2) {
+			interval = clamp(interval / backoff);
+		}
+		else {
+			interval = clamp(interval * backoff);
+		}
+		lastCount = count;
+		lastTime = time;
+	}
+
+	/** @return the interval until the next recording in minutes */
+	public synchronized double getInterval() {
+		return interval;
+	}
+
+	/** @return the recordings per hour at the current interval */
+	public synchronized double getRate() {
+		return 60 / interval;
+	}
+
+	public double getFloor() {
+		return floor;
+	}
+
+	public double getCeiling() {
+		return ceiling;
+	}
+
+}
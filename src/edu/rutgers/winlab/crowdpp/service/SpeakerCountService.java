@@ -26,6 +26,13 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -35,18 +42,28 @@ import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 
+import edu.rutgers.winlab.crowdpp.audio.AudioRecorder;
+import edu.rutgers.winlab.crowdpp.audio.CalibrationProfile;
+import edu.rutgers.winlab.crowdpp.audio.FidelityProfile;
+import edu.rutgers.winlab.crowdpp.audio.IncrementalSpeakerCounter;
+import edu.rutgers.winlab.crowdpp.audio.LiveFeatureExtractor;
+import edu.rutgers.winlab.crowdpp.audio.SpeakerCluster;
 import edu.rutgers.winlab.crowdpp.audio.SpeakerCount;
-import edu.rutgers.winlab.crowdpp.audio.MFCC;
-import edu.rutgers.winlab.crowdpp.audio.Yin;
+import edu.rutgers.winlab.crowdpp.audio.SpeechProbe;
+import edu.rutgers.winlab.crowdpp.audio.StreamingSegmenter;
+import edu.rutgers.winlab.crowdpp.audio.FeatureExtractor;
 import edu.rutgers.winlab.crowdpp.db.DataBaseHelper;
 import edu.rutgers.winlab.crowdpp.sensor.LocationTracker;
 import edu.rutgers.winlab.crowdpp.ui.HomeFragment;
 import edu.rutgers.winlab.crowdpp.ui.MainActivity;
 //import edu.rutgers.winlab.crowdpp.ui.test.MainActivity;
 import edu.rutgers.winlab.crowdpp.util.Constants;
+import edu.rutgers.winlab.crowdpp.util.FeatureFile;
+import edu.rutgers.winlab.crowdpp.util.FeatureFileWriter;
 import edu.rutgers.winlab.crowdpp.util.FileProcess;
 import edu.rutgers.winlab.crowdpp.util.Now;
 import edu.rutgers.winlab.crowdpp.util.PhoneStatus;
+import edu.rutgers.winlab.crowdpp.util.StagePipeline;
 import edu.rutgers.winlab.crowdpp.R;
 import android.annotation.SuppressLint;
 import android.app.Notification;
@@ -57,6 +74,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -89,25 +107,36 @@ public class SpeakerCountService extends Service {
 	
 	private SharedPreferences settings;
 		
-	private String wavFile;
 	private File serviceDir;
-
-	static boolean recording = false;
 	
-	// default values when the data is not available
-	static int speaker_count = 0;
-	static double percentage = -1;
-	static double latitude = -1;
-	static double longitude = -1;
+	// the job being recorded, null between the recordings
+	private volatile CountJob capture;
+	
+	// extracts, counts and stores the recorded jobs while the next one is recorded
+	private StagePipeline<CountJob> pipeline;
+	
+	// the ids of the queued jobs in the pipeline, so the queue is not drained into it twice
+	private final Set<Long> inFlight = new HashSet<Long>();
+	
+	// the deferred jobs by id with their streamed features, the queue is drained with them instead of the wav files
+	private final Map<Long, CountJob> deferred = new HashMap<Long, CountJob>();
+	
+	// picks the interval until the next recording from the recent counts, null for the fixed interval_min
+	private volatile SamplingPolicy policy;
 	
 	// read from settings
 	static String start_hr, end_hr, interval_min, duration_min, location, upload;
 		
-	// for database insertion
-	static long sys_time;
-	static String date, start, end;
 	static String curr_hr, curr_min, curr_date;
 	public static final int NOTIFICATIN_ID = 100;
+	
+	// how long onDestroy waits for the jobs in progress before closing the database
+	private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+	
+	// every access to the database holds this lock, and there is none once onDestroy closed it,
+	// the timer tasks and the stages may still be running then
+	private final Object dbLock = new Object();
+	private boolean dbClosed = false;
 	private void showInfo(){ 
         NotificationManager manager = (NotificationManager)this.getSystemService(Context.NOTIFICATION_SERVICE); 
                    //get the service of the notification                
@@ -133,6 +162,10 @@ public class SpeakerCountService extends Service {
 		
 		mDatabase = new DataBaseHelper(getApplicationContext());
 		mDB = mDatabase.getWritableDatabase();
+		// a recording still marked as going was cut off when the service was killed, count what was written
+		synchronized (dbLock) {
+			mDatabase.updateJobsRecording(mDB);
+		}
 		
 	  loc = new LocationTracker(getApplicationContext());
 
@@ -142,6 +175,30 @@ public class SpeakerCountService extends Service {
     
     s3Client = new AmazonS3Client(new BasicAWSCredentials(Constants.ACCESS_KEY_ID, Constants.SECRET_KEY));
 		s3Client.setRegion(Region.getRegion(Regions.US_WEST_2));		
+		
+		pipeline = new StagePipeline<CountJob>("SpeakerCountPipeline")
+				.addStage("extract", Constants.service_queue_capacity, new StagePipeline.Stage<CountJob>() {
+					public boolean process(CountJob job) {
+						return extract(job);
+					}
+				})
+				.addStage("count", Constants.service_queue_capacity, new StagePipeline.Stage<CountJob>() {
+					public boolean process(CountJob job) {
+						return count(job);
+					}
+				})
+				.addStage("persist", Constants.service_queue_capacity, new StagePipeline.Stage<CountJob>() {
+					public boolean process(CountJob job) {
+						return persist(job);
+					}
+				});
+		pipeline.setListener(new StagePipeline.Listener<CountJob>() {
+			public void onDone(CountJob job, boolean completed) {
+				synchronized (inFlight) {
+					inFlight.remove(job.id);
+				}
+			}
+		});
 	}
 	
 	@SuppressWarnings("deprecation")
@@ -184,33 +241,200 @@ public class SpeakerCountService extends Service {
 
 	  long interval_ms = (long) (Integer.parseInt(interval_min) * 60 * 1000);
 		speakerCountTimer = new Timer();
-		speakerCountTimer.schedule(new SpeakerCountTask(), dt, interval_ms);
+		audioRecordTimer = new Timer();
+		if (Constants.service_adaptive) {
+			// every SpeakerCountTask schedules the next one
+			policy = new SamplingPolicy(Integer.parseInt(interval_min), Constants.service_interval_floor_min, Constants.service_interval_ceiling_min, 
+					Integer.parseInt(duration_min), Constants.service_interval_backoff);
+			speakerCountTimer.schedule(new SpeakerCountTask(), dt);
+		}
+		else {
+			policy = null;
+			speakerCountTimer.schedule(new SpeakerCountTask(), dt, interval_ms);
+		}
+		// the jobs left over from the last run
+		speakerCountTimer.schedule(new DrainTask(), 0);
 		return START_STICKY;
 	}
 	
-	/** This timer executes every interval_ms in a periodic manner to record audio and count speakers. */
+	/** @return true if the battery policy allows counting now */
+	private boolean canProcess() {
+		Intent bIntent = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+		if (bIntent == null) {
+			return true;
+		}
+		boolean charging = PhoneStatus.isCharging(bIntent);
+		if (Constants.service_process_charging_only && !charging) {
+			return false;
+		}
+		// below the floor the recordings wait, the fidelity profiles only make the counts above it cheaper
+		return charging || PhoneStatus.getBatteryLevel(bIntent) >= Constants.service_battery_lower;
+	}
+	
+	/** @return the fidelity profile for the battery now, the full one if the profiles are off */
+	private FidelityProfile selectFidelity() {
+		if (!Constants.service_fidelity) {
+			return FidelityProfile.FULL;
+		}
+		Intent bIntent = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+		if (bIntent == null) {
+			return FidelityProfile.FULL;
+		}
+		return FidelityProfile.select(PhoneStatus.getBatteryLevel(bIntent), PhoneStatus.isCharging(bIntent));
+	}
+	
+	/** submit the job to the pipeline if fewer than service_queue_concurrency queued jobs are in it */
+	private boolean submitQueued(CountJob job) {
+		synchronized (inFlight) {
+			if (inFlight.contains(job.id) || inFlight.size() >= Constants.service_queue_concurrency) {
+				return false;
+			}
+			if (!pipeline.submit(job)) {
+				return false;
+			}
+			inFlight.add(job.id);
+		}
+		Log.i("SpeakerCountTask", pipeline.toString());
+		return true;
+	}
+	
+	/** hand the pending jobs to the pipeline, oldest first, as far as the battery policy and the concurrency allow */
+	private void drainQueue() {
+		if (!Constants.service_queue_durable || !canProcess()) {
+			return;
+		}
+		// submitting does not wait for the stages, so they cannot block on the lock held here
+		synchronized (dbLock) {
+			if (dbClosed) {
+				return;
+			}
+			Cursor cursor = mDatabase.queryPendingJobs(mDB);
+			try {
+				while (cursor.moveToNext()) {
+					CountJob job = new CountJob(cursor.getLong(0), cursor.getLong(1), cursor.getString(5), cursor.getString(2), cursor.getString(3), cursor.getString(4), 
+							cursor.getInt(6), cursor.getInt(7) != 0, cursor.getDouble(8), cursor.getDouble(9), cursor.getString(10), cursor.getString(11), cursor.getInt(12) != 0);
+					synchronized (deferred) {
+						CountJob kept = deferred.get(job.id);
+						if (kept != null) {
+							job = kept;
+						}
+					}
+					synchronized (inFlight) {
+						if (inFlight.contains(job.id)) {
+							continue;
+						}
+						if (inFlight.size() >= Constants.service_queue_concurrency) {
+							break;
+						}
+					}
+					if (!submitQueued(job)) {
+						break;
+					}
+					synchronized (deferred) {
+						deferred.remove(job.id);
+					}
+					Log.i("SpeakerCountTask", "Resume " + job.wavFile + (job.extracted ? " with its streamed features" : ""));
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+	}
+	
+	/** Counts the queued jobs, e.g. after a restart */
+	private class DrainTask extends TimerTask {
+		@Override
+		public void run() {
+			drainQueue();
+		}
+	}
+	
+	/** 
+	 * This timer executes every interval_ms in a periodic manner to record audio, the recording is then counted by the pipeline.
+	 * With the adaptive policy the interval changes and each task schedules the next one.
+	 */
 	private class SpeakerCountTask extends TimerTask {
 		@Override
 		public void run() {	
-		  date = Now.getDate();
-		  start = Now.getTimeOfDay();
+			String interval = interval_min;
+			SamplingPolicy p = policy;
+			if (p != null) {
+				double minutes = p.getInterval();
+				try {
+					speakerCountTimer.schedule(new SpeakerCountTask(), (long) (minutes * 60 * 1000));
+				} catch (IllegalStateException e) {
+					// the service is stopping
+					return;
+				}
+				interval = Double.toString(minutes);
+				Log.i("SpeakerCountTask", "Next recording in " + minutes + " min, " + p.getRate() + " per hour");
+			}
+			// the deferred jobs go first, the battery may allow them now
+			drainQueue();
 		  curr_hr = Now.getHour();
 		  Log.i("SpeakerCountTask", Integer.parseInt(curr_hr) + " is between " + Integer.parseInt(start_hr) + " and " + Integer.parseInt(end_hr) + "?");
 			if (Integer.parseInt(curr_hr) >= Integer.parseInt(start_hr) && Integer.parseInt(curr_hr) < Integer.parseInt(end_hr)) {
 				Log.i("SpeakerCountTask", "In period.");
+				CountJob current = capture;
+				if (current != null) {
+					// there is one microphone, the earlier recording is still going
+					Log.w("SpeakerCountTask", "Still recording " + current.wavFile + ", skip this cycle");
+					return;
+				}
 				String filename = FileProcess.newFileOnTime("wav");
-				wavFile = serviceDir + "/" + filename;
+				CountJob job = new CountJob(System.currentTimeMillis(), serviceDir + "/" + filename, Now.getDate(), Now.getTimeOfDay(), interval, duration_min);
 				Bundle mbundle = new Bundle();
-				mbundle.putString("audiopath", wavFile);
-				recording = true;
+				// counted after "duration_ms" recording, or earlier once the running count is stable or the probe hears no speech
+				AudioRecordTask recordTask = new AudioRecordTask(job);
+				if (Constants.service_streaming) {
+					// the BIC segmentation needs all the frames, so the extractor keeps them
+					boolean segmenting = !Constants.service_feature_keep && !Constants.seg_bic;
+					// the kept frames are segmented at the fixed frame hop, only the segmenting path takes a profile
+					if (segmenting) {
+						job.fidelity = selectFidelity();
+					}
+					if (Constants.service_early_stop && segmenting) {
+						job.extractor = new LiveFeatureExtractor(true, new EarlyStopListener(newCounter(), recordTask), job.fidelity);
+					}
+					else {
+						job.extractor = new LiveFeatureExtractor(segmenting, null, job.fidelity);
+					}
+					// only write the wav file when the raw data is kept, or to count it again from the queue
+					mbundle.putString("audiopath", Constants.service_raw_keep || Constants.service_queue_durable ? job.wavFile : null);
+				}
+				else {
+					mbundle.putString("audiopath", job.wavFile);
+				}
+				AudioRecorder.OnBufferReadyListener bufferListener = job.extractor;
+				if (Constants.service_probe) {
+					bufferListener = new SpeechProbe(Constants.service_probe_sec, new ProbeListener(recordTask), bufferListener);
+				}
+				AudioRecordService.setBufferListener(bufferListener);
+				if (Constants.service_queue_durable) {
+					synchronized (dbLock) {
+						if (dbClosed) {
+							// the service is stopping
+							if (job.extractor != null) {
+								job.extractor.finish();
+								job.extractor = null;
+							}
+							return;
+						}
+						job.id = mDatabase.insertJob(mDB, job.time, job.date, job.start, job.wavFile, job.interval_min, job.duration_min);
+					}
+				}
+				capture = job;
 				// start audio recording
 				Intent audioRecordIntent = new Intent(SpeakerCountService.this, AudioRecordService.class);
 				audioRecordIntent.putExtras(mbundle);
-				Log.i("SpeakerCountTask", "Recording");
+				Log.i("SpeakerCountTask", "Recording at " + job.fidelity);
 				startService(audioRecordIntent);
 			  long duration_ms = (long) (Integer.parseInt(duration_min) * 60 * 1000);
-				audioRecordTimer = new Timer();
-			  audioRecordTimer.schedule(new AudioRecordTask(), duration_ms);
+			  // the rest of the recording would not be processed
+			  if (job.extractor != null && job.fidelity.getMaxSeconds() > 0) {
+			  	duration_ms = Math.min(duration_ms, (long) (job.fidelity.getMaxSeconds() * 1000));
+			  }
+			  audioRecordTimer.schedule(recordTask, duration_ms);
 			}
 			else {
 				Log.i("SpeakerCountTask", "Out of time period.");
@@ -218,119 +442,379 @@ public class SpeakerCountService extends Service {
 		}
 	}
 
-	/** This timer is nested inside the SpeakerCountTask. It is called after "duration_ms" recording and executes speak counting */
+	/** @return the running counter with the owner's and the enrolled calibration profiles, if any */
+	private IncrementalSpeakerCounter newCounter() {
+		List<SpeakerCluster> enrolled = new ArrayList<SpeakerCluster>();
+		if (Constants.calibration()) {
+			try {
+				CalibrationProfile cal = CalibrationProfile.load(HomeFragment.calWavFile);
+				if (cal != null) {
+					enrolled.add(cal.getCluster());
+					for (CalibrationProfile profile : CalibrationProfile.loadEnrolled(Constants.enrolledPath)) {
+						enrolled.add(profile.getCluster());
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				enrolled.clear();
+			}
+		}
+		return new IncrementalSpeakerCounter(enrolled, null);
+	}
+
+	/** Counts the segments while recording and runs the AudioRecordTask early once the count is stable */
+	private class EarlyStopListener implements StreamingSegmenter.Listener {
+		private final IncrementalSpeakerCounter counter;
+		private final AudioRecordTask recordTask;
+
+		EarlyStopListener(IncrementalSpeakerCounter counter, AudioRecordTask recordTask) {
+			this.counter = counter;
+			this.recordTask = recordTask;
+		}
+
+		@Override
+		public void onSegment(SpeakerCluster segment, double end) {
+			if (segment != null) {
+				counter.offer(segment, end);
+			}
+			else {
+				counter.advance(end);
+			}
+			// the scheduled task is cancelled only once, if it has not started yet
+			if (counter.isStable(Constants.service_stable_sec) && recordTask.cancel()) {
+				Log.i("SpeakerCountTask", "Count " + counter.getCount() + " stable for " + counter.getStableSeconds() + " s, stop recording after " + end + " s");
+				try {
+					audioRecordTimer.schedule(new AudioRecordTask(recordTask.job), 0);
+				} catch (IllegalStateException e) {
+					// the service is stopping, onDestroy takes care of the recording
+				}
+			}
+		}
+	}
+
+	/** Stops the recording right after the probe if it hears no speech, the job is then recorded with a 0 count */
+	private class ProbeListener implements SpeechProbe.Listener {
+		private final AudioRecordTask recordTask;
+
+		ProbeListener(AudioRecordTask recordTask) {
+			this.recordTask = recordTask;
+		}
+
+		@Override
+		public void onProbe(boolean speech, double snr, double level) {
+			Log.i("SpeakerCountTask", "Probe SNR " + snr + " dB, level " + level + " dBFS, speech " + speech);
+			if (!speech && recordTask.cancel()) {
+				recordTask.job.silent = true;
+				try {
+					audioRecordTimer.schedule(new AudioRecordTask(recordTask.job), 0);
+				} catch (IllegalStateException e) {
+					// the service is stopping, onDestroy takes care of the recording
+				}
+			}
+		}
+	}
+
+	/** 
+	 * This timer is nested inside the SpeakerCountTask. It is called after "duration_ms" recording (or earlier by the EarlyStopListener),
+	 * stops the recording and hands the job to the pipeline, so the timer is free for the next recording 
+	 */
 	private class AudioRecordTask extends TimerTask {
+		private final CountJob job;
+
+		AudioRecordTask(CountJob job) {
+			this.job = job;
+		}
+
 		@Override
 		public void run() {
   		// stop audio recording
 			Intent audioRecordIntent = new Intent(SpeakerCountService.this, AudioRecordService.class);
 		  stopService(audioRecordIntent);
-		  end = Now.getTimeOfDay();
-	    recording = false;
+		  job.end = Now.getTimeOfDay();
+		  capture = null;
 	    
   		// get location information
 		  if (location.equals("On")) {
 		  	loc.getLocation();
 			  if (loc.canGetLocation()){
-			  	latitude = loc.getLatitude();
-			  	longitude = loc.getLongitude();
+			  	job.latitude = loc.getLatitude();
+			  	job.longitude = loc.getLongitude();
 			  } 
-  		  else {
-  		  	latitude  = -1;
-  		  	longitude = -1;
-  		  }			  
 			  loc.stopUsingGPS();
 		  }
 		  
-			// generate the MFCC and pitch feature data
-			try {
-				Yin.writeFile(wavFile);
-				Log.i("SpeakerCountTask", "Finish YIN");
-				MFCC.writeFile(wavFile);
-				Log.i("SpeakerCountTask", "Finish MFCC");				
-			} catch (IOException e) {
-				e.printStackTrace();
-			} catch (Exception e) {
-				e.printStackTrace();
+		  if (job.id >= 0) {
+		  	// the recording is safe in the queue, it is counted now or once the battery policy allows it
+		  	synchronized (dbLock) {
+		  		if (dbClosed) {
+		  			// still marked as recording, it is counted from the wav file on the next start
+		  			if (job.extractor != null) {
+		  				job.extractor.finish();
+		  				job.extractor = null;
+		  			}
+		  			return;
+		  		}
+		  		mDatabase.updateJobRecorded(mDB, job.id, job.end, job.latitude, job.longitude, job.silent);
+		  	}
+		  	if (!canProcess() || !submitQueued(job)) {
+		  		Log.i("SpeakerCountTask", "Defer " + job.wavFile + " (" + pipeline + ")");
+					// the streamed features wait in memory for the job, the wav file is only read if they are lost
+					if (job.extractor != null) {
+						boolean keep;
+						synchronized (deferred) {
+							keep = deferred.size() < Constants.service_queue_features;
+						}
+						if (keep && takeLiveFeatures(job)) {
+							synchronized (deferred) {
+								deferred.put(job.id, job);
+							}
+						}
+						else if (job.extractor != null) {
+							job.extractor.finish();
+							job.extractor = null;
+						}
+					}
+		  	}
+		  }
+		  else if (pipeline.submit(job)) {
+		  	Log.i("SpeakerCountTask", pipeline.toString());
+		  }
+		  else {
+		  	Log.w("SpeakerCountTask", "Pipeline full, drop " + job.wavFile + " (" + pipeline + ")");
+				if (job.extractor != null) {
+					job.extractor.finish();
+					job.extractor = null;
+				}
+				FileProcess.deleteFile(job.wavFile);
+		  }
+		}
+	}
+
+	/** generate the MFCC and pitch feature data of the recording */
+	private boolean extract(CountJob job) {
+		// nothing to extract after a silent probe
+		if (job.silent) {
+			if (job.extractor != null) {
+				job.extractor.finish();
+				job.extractor = null;
+			}
+			job.speaker_count = 0;
+			job.percentage = 0;
+			Log.i("SpeakerCountTask", "No speech in the probe of " + job.wavFile);
+			return true;
+		}
+		// a deferred job brings its streamed features along
+		if (job.extracted) {
+			return true;
+		}
+		// in streaming mode the features are already extracted
+		if (job.extractor != null) {
+			if (takeLiveFeatures(job)) {
+				return true;
+			}
+			// the streamed features are lost, the wav file is only there when it is kept or queued
+			if (!new File(job.wavFile).exists()) {
+				Log.w("SpeakerCountTask", "Streaming extraction of " + job.wavFile + " timed out, record the default values");
+				return true;
+			}
+			Log.w("SpeakerCountTask", "Streaming extraction of " + job.wavFile + " timed out, extract from the wav file");
+		}
+		try {
+			if (Constants.service_feature_keep || Constants.seg_bic) {
+				FeatureExtractor features = FeatureExtractor.extract(job.wavFile);
+				job.mfcc = features.getMfcc();
+				job.pitch = features.getPitch();
+			}
+			else {
+				job.fidelity = selectFidelity();
+				job.segments = FeatureExtractor.extract(job.wavFile, new StreamingSegmenter(job.fidelity), job.fidelity).getSegmenter().finish();
+			}
+			job.extracted = true;
+			Log.i("SpeakerCountTask", "Finish YIN and MFCC");
+		} catch (Exception e) {
+			e.printStackTrace();
+			// a queued job is tried again later, the last attempt is recorded with the default values
+			if (job.id >= 0 && ++job.attempts < Constants.service_job_attempts) {
+				synchronized (dbLock) {
+					if (!dbClosed) {
+						mDatabase.updateJobAttempts(mDB, job.id, job.attempts);
+					}
+				}
+				Log.w("SpeakerCountTask", "Extraction of " + job.wavFile + " failed, attempt " + job.attempts);
+				return false;
 			}
-			String[] tst_files = new String[2];
-			tst_files[0] = wavFile + ".jstk.mfcc.txt";
-			tst_files[1] = wavFile + ".YIN.pitch.txt";
-			
-			// semisupervised speaker counting with owner's calibration data 
-	    if (Constants.calibration()) {
-				String[] cal_files = new String[2];
-				cal_files[0] = HomeFragment.calWavFile + ".jstk.mfcc.txt";
-				cal_files[1] = HomeFragment.calWavFile + ".YIN.pitch.txt";
+		}
+		return true;
+	}
+
+	/** 
+	 * finish the streaming extraction of the job and take its features,
+	 * unless the features are kept, only the voiced segments are held in memory instead of all the frames
+	 * @return false if the extraction did not finish in time
+	 */
+	private boolean takeLiveFeatures(CountJob job) {
+		LiveFeatureExtractor live = job.extractor;
+		job.extractor = null;
+		if (!live.finish()) {
+			return false;
+		}
+		if (live.isSegmenting()) {
+			job.segments = live.getSegments();
+		}
+		else {
+			job.mfcc = live.getMfcc();
+			job.pitch = live.getPitch();
+		}
+		job.extracted = true;
+		Log.i("SpeakerCountTask", "Finish streaming YIN and MFCC");
+		return true;
+	}
+
+	/** count the speakers of the extracted features */
+	private boolean count(CountJob job) {
+		if (!job.extracted) {
+			return true;
+		}
+		if (job.mfcc != null) {
+			if (Constants.service_feature_keep) {
 				try {
-					double rv[] = SpeakerCount.semisupervised(tst_files, cal_files);
-					speaker_count = (int)rv[0];
-					percentage = rv[1];		
+					FeatureFileWriter.write(FeatureFile.getPath(job.wavFile), FeatureFile.DEFAULT_FRAME_RATE, job.mfcc, job.pitch);
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
-	    }
-	    
-			// unsupervised speaker counting without calibration data 
-			else {
+			}
+			job.segments = SpeakerCount.segmentation(job.mfcc, job.pitch);
+			job.mfcc = null;
+			job.pitch = null;
+		}
+		
+		// the compiled calibration profile is cached, so the calibration features are not read again 
+		CalibrationProfile cal = null;
+		if (Constants.calibration()) {
+			try {
+				cal = CalibrationProfile.load(HomeFragment.calWavFile);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		// semisupervised speaker counting with owner's calibration data and the other enrolled speakers
+		if (cal != null) {
+			List<CalibrationProfile> profiles = new ArrayList<CalibrationProfile>();
+			profiles.add(cal);
+			try {
+				profiles.addAll(CalibrationProfile.loadEnrolled(Constants.enrolledPath));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			List<SpeakerCluster> owner = new ArrayList<SpeakerCluster>();
+			double rv[] = SpeakerCount.semisupervised(job.segments, profiles, owner);
+			job.speaker_count = (int)rv[0];
+			job.percentage = rv[1];		
+			if (profiles.size() > 1) {
+				job.enrolled_percentage = new double[profiles.size() - 1];
+				System.arraycopy(rv, 2, job.enrolled_percentage, 0, job.enrolled_percentage.length);
+			}
+			// keep the owner's model fresh with the confirmed owner's speech, the jobs are counted one at a time
+			// and a retried job does not refine it twice
+			if (Constants.owner_refine && !job.refined) {
 				try {
-					speaker_count = SpeakerCount.unsupervised(tst_files);
-					percentage = -1;					
+					CalibrationProfile.refine(HomeFragment.calWavFile, owner);
+					job.refined = true;
+					if (job.id >= 0) {
+						synchronized (dbLock) {
+							if (!dbClosed) {
+								mDatabase.updateJobRefined(mDB, job.id);
+							}
+						}
+					}
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
 			}
-	  
-			if (!Constants.service_raw_keep) {
-				FileProcess.deleteFile(wavFile);
-			}
-			if (!Constants.service_feature_keep) {
-				FileProcess.deleteFile(tst_files[0]);
-				FileProcess.deleteFile(tst_files[1]);					
-			}
-			Log.i("SpeakerCount", Integer.toString(speaker_count));	
-			
-		  // log the service record 
-			if (Constants.log) {
-				Intent bIntent = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
-				String log	= wavFile + "\tDate:\t" + date + "\tstart:\t" + start + "\tend:\t" + end
-										+ "\tspeaker count:\t" + Integer.toString(speaker_count) + "\tspeech percentage:\t" + Double.toString(percentage)
-										+ "\tinterval (min):\t" + interval_min + "\tduration (min):\t" + duration_min
-										+ "\tlatitude:\t" + Double.toString(latitude) + "\tlongitude:\t" + Double.toString(longitude)
-										+ "\tbattery:\t" + Float.toString(PhoneStatus.getBatteryLevel(bIntent)) + "\n";
-				File logFile = new File(serviceDir, "/" + "log.txt");
-				FileOutputStream fos;
-				try {
-					fos = new FileOutputStream(logFile, true);
-					fos.write(log.getBytes());
-					fos.close();
-					Log.i("SpeakerCountTask", log);					
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();				
-				} catch (IOException e) {
-					e.printStackTrace();					
+		}
+		
+		// unsupervised speaker counting without calibration data 
+		else {
+			job.speaker_count = SpeakerCount.unsupervised(job.segments);
+			job.percentage = -1;					
+		}
+		job.segments = null;
+		return true;
+	}
+
+	/** insert the count into the social diary, log it and upload the database */
+	private boolean persist(CountJob job) {
+		Log.i("SpeakerCount", Integer.toString(job.speaker_count));	
+		
+		// the recordings after this one follow the recent counts
+		SamplingPolicy p = policy;
+		if (p != null) {
+			p.onResult(job.time, job.speaker_count);
+		}
+		
+		// insert the record into the social diary table with the effective interval, a queued job only once
+		long sys_time = System.currentTimeMillis();
+		double interval = job.getInterval();
+		synchronized (dbLock) {
+			if (dbClosed) {
+				Log.w("SpeakerCountTask", "Service stopped, the count of " + job.wavFile + " is not recorded");
+				return false;
+			}
+			if (job.id >= 0) {
+				if (mDatabase.completeJob(mDB, job.id, sys_time, job.date, job.start, job.end, job.speaker_count, job.percentage, job.latitude, job.longitude, interval) < 0) {
+					Log.w("SpeakerCountTask", "Job of " + job.wavFile + " was already recorded");
+					return false;
 				}
 			}
-			
-			// insert the record into the social diary table
-			sys_time = System.currentTimeMillis();
-			mDatabase.insertDiary(mDB, sys_time, date, start, end, speaker_count, percentage, latitude, longitude);
-			
-			// upload the database after the first speaker counting task done every day
-			if (upload.equals("On")) {
-				if (debug) {
-					Log.i("Upload", "Begin");
-			 		new S3PutDataBaseTask().execute();
-					Log.i("Upload", "Finish");
-			 	}
-			 	if (!curr_date.equals(Now.getDate())) {
-					Log.i("Upload", "Begin");
-			 		new S3PutDataBaseTask().execute();
-					Log.i("Upload", "Finish");
-			 		curr_date = Now.getDate();
-			 	}
+			else {
+				mDatabase.insertDiary(mDB, sys_time, job.date, job.start, job.end, job.speaker_count, job.percentage, job.latitude, job.longitude, interval);
+			}
+		}
+		if (!Constants.service_raw_keep) {
+			FileProcess.deleteFile(job.wavFile);
+		}
+		
+	  // log the service record 
+		if (Constants.log) {
+			Intent bIntent = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+			String log	= job.wavFile + "\tDate:\t" + job.date + "\tstart:\t" + job.start + "\tend:\t" + job.end
+									+ "\tspeaker count:\t" + Integer.toString(job.speaker_count) + "\tspeech percentage:\t" + Double.toString(job.percentage)
+									+ (job.enrolled_percentage != null ? "\tenrolled speech percentage:\t" + Arrays.toString(job.enrolled_percentage) : "")
+									+ (job.silent ? "\tprobe:\tno speech" : "")
+									+ "\tfidelity:\t" + job.fidelity.getName()
+									+ "\tinterval (min):\t" + job.interval_min + "\tduration (min):\t" + job.duration_min
+									+ "\tlatitude:\t" + Double.toString(job.latitude) + "\tlongitude:\t" + Double.toString(job.longitude)
+									+ "\tbattery:\t" + Float.toString(PhoneStatus.getBatteryLevel(bIntent)) + "\n";
+			File logFile = new File(serviceDir, "/" + "log.txt");
+			FileOutputStream fos;
+			try {
+				fos = new FileOutputStream(logFile, true);
+				fos.write(log.getBytes());
+				fos.close();
+				Log.i("SpeakerCountTask", log);					
+			} catch (FileNotFoundException e) {
+				e.printStackTrace();				
+			} catch (IOException e) {
+				e.printStackTrace();					
 			}
 		}
+		
+		// upload the database after the first speaker counting task done every day
+		if (upload.equals("On")) {
+			if (debug) {
+				Log.i("Upload", "Begin");
+		 		new S3PutDataBaseTask().execute();
+				Log.i("Upload", "Finish");
+		 	}
+		 	if (!curr_date.equals(Now.getDate())) {
+				Log.i("Upload", "Begin");
+		 		new S3PutDataBaseTask().execute();
+				Log.i("Upload", "Finish");
+		 		curr_date = Now.getDate();
+		 	}
+		}
+		return true;
 	}
 
 	/** Put the database into Amazon S3. */
@@ -363,22 +847,40 @@ public class SpeakerCountService extends Service {
 		Toast.makeText(this, "Crowd++ service stop...", Toast.LENGTH_SHORT).show();
 		NotificationManager manager2 = (NotificationManager)this.getSystemService(Context.NOTIFICATION_SERVICE);
 		manager2.cancelAll();
-		if (recording) {
+		speakerCountTimer.cancel();	
+		Log.i("SpeakerCountTask", "Cancel");
+		audioRecordTimer.cancel();
+		CountJob job = capture;
+		if (job != null) {
+			capture = null;
 			Intent intent = new Intent(SpeakerCountService.this, AudioRecordService.class);
 			stopService(intent);
-			audioRecordTimer.cancel();
-			FileProcess.deleteFile(wavFile);
+			if (job.extractor != null) {
+				job.extractor.finish();
+				job.extractor = null;
+			}
+			// a queued recording is counted as far as it got on the next start
+			if (job.id < 0) {
+				FileProcess.deleteFile(job.wavFile);
+			}
 			Log.i("AudioRecordTask", "Cancel");			
 		}		
-		speakerCountTimer.cancel();	
-		Log.i("SpeakerCountTask", "Cancel");
+		// the queued jobs are dropped, a stage still running after the timeout finds the database closed
+		if (!pipeline.shutdownNow(SHUTDOWN_TIMEOUT_MS)) {
+			Log.w("SpeakerCountPipeline", "A job is still running, it is not recorded");
+		}
+		Log.i("SpeakerCountPipeline", "Cancel");
 
 		wl.release();
-		if (mDB != null) {
-			mDB.close();
-		}
-		if (mDatabase != null)	{
-			mDatabase.close();
+		// cancel() does not wait for a running timer task, it finds the database closed like a late stage
+		synchronized (dbLock) {
+			dbClosed = true;
+			if (mDB != null) {
+				mDB.close();
+			}
+			if (mDatabase != null)	{
+				mDatabase.close();
+			}
 		}
 		super.onDestroy();
 	}
@@ -34,14 +34,18 @@ import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 
 import edu.rutgers.winlab.crowdpp.R;
+import edu.rutgers.winlab.crowdpp.audio.CalibrationProfile;
 import edu.rutgers.winlab.crowdpp.audio.SpeakerCount;
 import edu.rutgers.winlab.crowdpp.audio.MFCC;
+import edu.rutgers.winlab.crowdpp.audio.FeatureExtractor;
 import edu.rutgers.winlab.crowdpp.audio.Yin;
 import edu.rutgers.winlab.crowdpp.db.DataBaseHelper;
 import edu.rutgers.winlab.crowdpp.sensor.LocationTracker;
 import edu.rutgers.winlab.crowdpp.service.AudioRecordService;
 import edu.rutgers.winlab.crowdpp.service.SpeakerCountService;
 import edu.rutgers.winlab.crowdpp.util.Constants;
+import edu.rutgers.winlab.crowdpp.util.FeatureFile;
+import edu.rutgers.winlab.crowdpp.util.FeatureFileWriter;
 import edu.rutgers.winlab.crowdpp.util.FileProcess;
 import edu.rutgers.winlab.crowdpp.util.Now;
 import android.app.ActivityManager;
@@ -196,8 +200,8 @@ public class HomeFragment extends Fragment {
 				  			
 				  			// delete the existing calibration data before the recalibration 
 				  			FileProcess.deleteFile(calWavFile);
-				  			FileProcess.deleteFile(calWavFile + ".jstk.mfcc.txt");
-				  			FileProcess.deleteFile(calWavFile + ".YIN.pitch.txt");
+				  			FeatureFile.delete(calWavFile);
+				  			CalibrationProfile.invalidate(calWavFile);
 				  			
 				  			// start audio recording
 				  			Intent recordIntent = new Intent(getActivity(), AudioRecordService.class);
@@ -322,22 +326,33 @@ public class HomeFragment extends Fragment {
 				Log.i("SpeakerCountTask", "Finish MFCC");
 				// calibration succeeded with enough audio data
 				if (SpeakerCount.selfCalibration(calWavFile)) {
+					// compile the calibration profile once for the speaker counting
+					CalibrationProfile.compile(calWavFile);
 					return 1;
 				}
 				// calibration failed without enough audio data
 				else {
 					Log.i("CalibrationTask", "Failed");
+					discard();
 					return 0;
 				}
 		  } catch (IOException e) {
 		  	e.printStackTrace();
+		  	discard();
 				return 0;		  	
 			} catch (Exception e) {
 				e.printStackTrace();
+				discard();
 				return 0;		  	
 			}
 		}
 		
+		/** delete the features of the failed calibration, so no profile is compiled from them, and mark it as not done */
+		private void discard() {
+			FeatureFile.delete(calWavFile);
+			CalibrationProfile.invalidate(calWavFile);
+		}
+		
     @Override
     protected void onProgressUpdate(String... values) {
 
@@ -371,42 +386,36 @@ public class HomeFragment extends Fragment {
 	class Test extends AsyncTask<String, String, Integer> {
 		@Override
 		protected Integer doInBackground(String... arg0) {
-			// generate the MFCC and pitch feature data
+			// generate the MFCC and pitch feature data in one pass
+			double[][] mfcc = new double[0][], pitch = new double[0][];
 			try {
-				Yin.writeFile(testWavFile);
-				Log.i("SpeakerCountTask", "Finish YIN");
-				MFCC.writeFile(testWavFile);
-				Log.i("SpeakerCountTask", "Finish MFCC");				
-			} catch (IOException e) {
-				e.printStackTrace();
+				FeatureExtractor features = FeatureExtractor.extract(testWavFile);
+				mfcc = features.getMfcc();
+				pitch = features.getPitch();
+				Log.i("SpeakerCountTask", "Finish YIN and MFCC");
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
-			String[] tst_files = new String[2];
-			tst_files[0] = testWavFile + ".jstk.mfcc.txt";
-			tst_files[1] = testWavFile + ".YIN.pitch.txt";
 			
-			// semisupervised speaker counting with owner's calibration data 
+			// the compiled calibration profile is cached, so the calibration features are not read again 
+			CalibrationProfile cal = null;
 		  if (Constants.calibration()) {
-				String[] cal_files = new String[2];
-				cal_files[0] = calWavFile + ".jstk.mfcc.txt";
-				cal_files[1] = calWavFile + ".YIN.pitch.txt";
 				try {
-					double rv[] = SpeakerCount.semisupervised(tst_files, cal_files);
-					speaker_count = (int)rv[0];
-					percentage = rv[1];	
+					cal = CalibrationProfile.load(calWavFile);
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
+	    }
+			// semisupervised speaker counting with owner's calibration data 
+		  if (cal != null) {
+				double rv[] = SpeakerCount.semisupervised(SpeakerCount.segmentation(mfcc, pitch), cal);
+				speaker_count = (int)rv[0];
+				percentage = rv[1];	
 	    }
 			// unsupervised speaker counting without calibration data 
 			else {
-				try {
-					speaker_count = SpeakerCount.unsupervised(tst_files);
-					percentage = -1;					
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+				speaker_count = SpeakerCount.unsupervised(mfcc, pitch);
+				percentage = -1;					
 			}
 		  
 		  // log the test record 
@@ -451,9 +460,12 @@ public class HomeFragment extends Fragment {
 			if (!Constants.test_raw_keep) {
 				FileProcess.deleteFile(testWavFile);
 			}
-			if (!Constants.test_feature_keep) {
-				FileProcess.deleteFile(tst_files[0]);
-				FileProcess.deleteFile(tst_files[1]);					
+			if (Constants.test_feature_keep) {
+				try {
+					FeatureFileWriter.write(FeatureFile.getPath(testWavFile), FeatureFile.DEFAULT_FRAME_RATE, mfcc, pitch);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
 			}
 			
 			return speaker_count;
@@ -50,6 +50,8 @@ public class Constants {
 	public static String crowdppPath = FileProcess.getSdPath() + "/Crowdpp";
 	public static String testPath = crowdppPath + "/test";
 	public static String servicePath = crowdppPath + "/service";
+	/** The calibration profiles of the speakers enrolled besides the owner */
+	public static String enrolledPath = crowdppPath + "/enrolled";
 	
 	/** The flags for raw data */
 	public static boolean test_raw_keep = true;
@@ -57,6 +59,58 @@ public class Constants {
 	public static boolean service_raw_keep = false;
 	public static boolean service_feature_keep = false;
 	
+	/** Extract the features from the recorded buffers instead of the wav file in the service */
+	public static boolean service_streaming = true;
+	
+	/** The most recorded buffers waiting for the streaming extraction, later buffers are dropped while the queue is full */
+	public static int live_queue_buffers = 256;
+	
+	/** Stop the service recording once the speaker count has not changed for service_stable_sec seconds, needs streaming without keeping the features */
+	public static boolean service_early_stop = true;
+	public static double service_stable_sec = 300;
+	/** 
+	 * Adapt the interval between the recordings to the recent counts, between the floor and the ceiling in minutes.
+	 * Off by default, the recordings follow the interval set in the settings 
+	 */
+	public static boolean service_adaptive = false;
+	public static double service_interval_floor_min = 5;
+	public static double service_interval_ceiling_min = 30;
+	/** The factor the interval is shortened by during a conversation and lengthened by during silence or a stable count */
+	public static double service_interval_backoff = 2;
+	/** Probe the first service_probe_sec seconds of every recording and stop it with a 0 count if there is no speech */
+	public static boolean service_probe = true;
+	public static double service_probe_sec = 5;
+	/** The probe hears speech at this SNR (dB) of the energy segmentation, or if a 25ms window is this loud (dBFS) */
+	public static double probe_snr_lower = 10;
+	public static double probe_level_lower = -35;
+	/** The most recordings waiting in each stage (extract, count, persist) of the service pipeline, a recording is dropped when the first is full */
+	public static int service_queue_capacity = 2;
+	/** 
+	 * Queue every recording in the database and keep its wav file until it is counted, so it survives a killed service.
+	 * Off by default, the wav file of every recording costs a full write to the SD card 
+	 */
+	public static boolean service_queue_durable = false;
+	/** The most queued recordings in the pipeline at once, the others wait in the database */
+	public static int service_queue_concurrency = 2;
+	/** The most deferred recordings whose streamed features wait in memory, the others are extracted again from the wav file */
+	public static int service_queue_features = 16;
+	/** Extractions of a queued recording before it is recorded with the default values */
+	public static int service_job_attempts = 3;
+	/** Count the queued recordings only while charging, or above service_battery_lower percent */
+	public static boolean service_process_charging_only = false;
+	public static float service_battery_lower = 20;
+	/** Pick the fidelity of the feature pipeline from the battery, the economy profile counts between service_battery_lower and fidelity_full_lower percent */
+	public static boolean service_fidelity = true;
+	/** The full fidelity profile runs while charging or above this percent, the economy one down to service_battery_lower */
+	public static float fidelity_full_lower = 50;
+	
+	/** Compute the YIN difference function through the FFT instead of the direct loop, see YinBenchmark for the parity check */
+	public static boolean yin_fft = false;
+	/** Frames whose mean absolute amplitude is below this (about -54 dBFS) are unvoiced without running YIN, 0 runs YIN on every frame */
+	public static double yin_energy_lower = 0.002;
+	/** When segmenting, compute the MFCC only for the segments that pass the pitch filter */
+	public static boolean mfcc_lazy = true;
+	
 	/** The parameters for speaker counting */
 	public static double mfcc_dist_same_semi;
 	public static double mfcc_dist_diff_semi; 
@@ -73,8 +127,26 @@ public class Constants {
 	public static double pitch_sigma_upper = 100;
 	
 	public static double seg_duration_sec = 3;
+	
+	/** Segment at the speaker changes found by BIC instead of every seg_duration_sec seconds, needs all the frames in memory */
+	public static boolean seg_bic = false;
+	/** The weight of the BIC penalty, the shortest segment, the initial and the longest window */
+	public static double seg_bic_lambda = 1.0;
+	public static double seg_bic_min_sec = 1;
+	public static double seg_bic_window_sec = 3;
+	public static double seg_bic_window_max_sec = 20;
+	
+	/** Only the MFCC columns 0-18 are used, the rest is skipped when reading feature files */
+	public static int mfcc_dim = 19;
 	public static double cal_duration_sec_lower = 45;
 	
+	/** Refine the owner's calibration profile with the segments merged into the owner in the service */
+	public static boolean owner_refine = true;
+	/** The weight left to the owner's model for every merged segment */
+	public static double owner_forgetting = 0.98;
+	/** The most frames the owner's model is worth (2 minutes), older frames are weighted down */
+	public static double owner_frames_max = 7500;
+	
 	/** The constructor initialize the parameters from the context */
   public Constants(Context c) {
   	
@@ -82,6 +154,7 @@ public class Constants {
     					+ c.getSharedPreferences("config", Context.MODE_PRIVATE).getString("brand", "") + "_"
     					+ c.getSharedPreferences("config", Context.MODE_PRIVATE).getString("model", "");
     dbName	= PHONE_ID + ".db"; 
+    calibrated = null;
     
   	mfcc_dist_same_semi = Double.parseDouble(c.getSharedPreferences("config", Context.MODE_PRIVATE).getString("mfcc_dist_same_semi", ""));
   	mfcc_dist_diff_semi = Double.parseDouble(c.getSharedPreferences("config", Context.MODE_PRIVATE).getString("mfcc_dist_diff_semi", ""));
@@ -89,14 +162,40 @@ public class Constants {
   	mfcc_dist_diff_un = Double.parseDouble(c.getSharedPreferences("config", Context.MODE_PRIVATE).getString("mfcc_dist_diff_un", ""));
   }
   
-	/** Flag for calibration done or not */
+	/** Store the MFCC distance thresholds into the SharedPreferences read by the constructor and use them */
+  public static void saveThresholds(Context c, double same_semi, double diff_semi, double same_un, double diff_un) {
+  	c.getSharedPreferences("config", Context.MODE_PRIVATE).edit()
+  		.putString("mfcc_dist_same_semi", Double.toString(same_semi))
+  		.putString("mfcc_dist_diff_semi", Double.toString(diff_semi))
+  		.putString("mfcc_dist_same_un", Double.toString(same_un))
+  		.putString("mfcc_dist_diff_un", Double.toString(diff_un))
+  		.commit();
+  	mfcc_dist_same_semi = same_semi;
+  	mfcc_dist_diff_semi = diff_semi;
+  	mfcc_dist_same_un = same_un;
+  	mfcc_dist_diff_un = diff_un;
+  }
+  
+	/** The calibration state, null until the files are checked */
+	private static Boolean calibrated;
+	
+	/** Flag for calibration done or not, the files are only checked on the first call */
   public static boolean calibration() {
-  	File mfccFile = new File(crowdppPath + "/" + Constants.PHONE_ID + ".wav" + ".jstk.mfcc.txt");
-  	File pitchFile = new File(crowdppPath + "/" + Constants.PHONE_ID + ".wav" + ".YIN.pitch.txt");
-  	if (mfccFile.exists() && pitchFile.exists())
-  		return true;
-  	else
-  		return false;
+  	Boolean done = calibrated;
+  	if (done == null) {
+  		String calWavFile = crowdppPath + "/" + Constants.PHONE_ID + ".wav";
+  		File profileFile = new File(calWavFile + ".profile.bin");
+  		File mfccFile = new File(calWavFile + ".jstk.mfcc.txt");
+  		File pitchFile = new File(calWavFile + ".YIN.pitch.txt");
+  		done = profileFile.exists() || (mfccFile.exists() && pitchFile.exists());
+  		calibrated = done;
+  	}
+  	return done;
+  }
+  
+	/** Set the calibration state when the calibration is done or redone, null checks the files again */
+  public static void setCalibration(Boolean done) {
+  	calibrated = done;
   }
 
 	/** The text for UI */
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * The DistanceBenchmark class
+ * Checks the distance kernels against the original SimpleMatrix formulas and times both.
+ * Run on a desktop JVM with ejml on the classpath:
+ * <pre>
+ * java edu.rutgers.winlab.crowdpp.util.DistanceBenchmark [pairs] [frames per segment]
+ * </pre>
+ */
+public class DistanceBenchmark {
+
+	private static final String[] NAMES = {"Cosine", "KullbackLeibler", "Bhattacharyya"};
+
+	private static final DistanceFunction[] FUNCTIONS = {Distances.COSINE, Distances.KULLBACK_LEIBLER, Distances.BHATTACHARYYA};
+
+	/** keeps the timed results alive */
+	private static double sink;
+
+	public static void main(String[] args) {
+		int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 187;
+		int dim = 19;
+
+		Random random = new Random(42);
+		SimpleMatrix[] a = new SimpleMatrix[pairs];
+		SimpleMatrix[] b = new SimpleMatrix[pairs];
+		for (int i = 0; i < pairs; i++) {
+			a[i] = randomSegment(random, frames, dim);
+			b[i] = randomSegment(random, frames, dim);
+		}
+
+		// the column statistics, as the speaker clusters keep them
+		double[][] mean_a = new double[pairs][], sigma_a = new double[pairs][];
+		double[][] mean_b = new double[pairs][], sigma_b = new double[pairs][];
+		for (int i = 0; i < pairs; i++) {
+			mean_a[i] = Maths.getColMean(a[i], new double[dim]);
+			sigma_a[i] = Maths.getColStd(a[i], mean_a[i], new double[dim]);
+			mean_b[i] = Maths.getColMean(b[i], new double[dim]);
+			sigma_b[i] = Maths.getColStd(b[i], mean_b[i], new double[dim]);
+		}
+
+		System.out.println(pairs + " pairs of " + frames + "x" + dim + " segments");
+		System.out.println("distance          max rel. error   reference ns   matrix ns   kernel ns");
+		for (int f = 0; f < FUNCTIONS.length; f++) {
+			double error = 0;
+			for (int i = 0; i < pairs; i++) {
+				double expected = reference(f, a[i], b[i]);
+				double actual = Distances.getDistance(FUNCTIONS[f], a[i], b[i]);
+				double kernel = FUNCTIONS[f].getDistance(mean_a[i], sigma_a[i], mean_b[i], sigma_b[i]);
+				error = Math.max(error, relativeError(expected, actual));
+				error = Math.max(error, relativeError(expected, kernel));
+			}
+
+			// warm up, then take the best of five rounds
+			long ref = Long.MAX_VALUE, mat = Long.MAX_VALUE, ker = Long.MAX_VALUE;
+			for (int round = 0; round < 6; round++) {
+				long t0 = System.nanoTime();
+				for (int i = 0; i < pairs; i++) {
+					sink += reference(f, a[i], b[i]);
+				}
+				long t1 = System.nanoTime();
+				for (int i = 0; i < pairs; i++) {
+					sink += Distances.getDistance(FUNCTIONS[f], a[i], b[i]);
+				}
+				long t2 = System.nanoTime();
+				for (int i = 0; i < pairs; i++) {
+					sink += FUNCTIONS[f].getDistance(mean_a[i], sigma_a[i], mean_b[i], sigma_b[i]);
+				}
+				long t3 = System.nanoTime();
+				if (round > 0) {
+					ref = Math.min(ref, t1 - t0);
+					mat = Math.min(mat, t2 - t1);
+					ker = Math.min(ker, t3 - t2);
+				}
+			}
+			System.out.println(String.format("%-17s %14.3g %14d %11d %11d", NAMES[f], error, ref / pairs, mat / pairs, ker / pairs));
+		}
+		if (sink == 0) {
+			System.out.println();
+		}
+	}
+
+	private static SimpleMatrix randomSegment(Random random, int frames, int dim) {
+		double[] offset = new double[dim];
+		for (int j = 0; j < dim; j++) {
+			offset[j] = random.nextGaussian() * 5;
+		}
+		SimpleMatrix seg = new SimpleMatrix(frames, dim);
+		for (int i = 0; i < frames; i++) {
+			for (int j = 0; j < dim; j++) {
+				seg.set(i, j, offset[j] + random.nextGaussian() * (1 + j % 3));
+			}
+		}
+		return seg;
+	}
+
+	private static double relativeError(double expected, double actual) {
+		if (expected == actual) {
+			return 0;
+		}
+		return Math.abs(expected - actual) / Math.max(Math.abs(expected), Double.MIN_NORMAL);
+	}
+
+	/** the distances as originally written with generic matrix operations */
+	private static double reference(int f, SimpleMatrix a, SimpleMatrix b) {
+		switch (f) {
+		case 0:
+			double[][] a_norm = toArray(a);
+			double[][] b_norm = toArray(b);
+			return Math.toDegrees(Math.acos(Maths.dotProduct(Maths.getColMean(a_norm), Maths.getColMean(b_norm)) / (Maths.getNorm2(Maths.getColMean(a_norm)) * Maths.getNorm2(Maths.getColMean(b_norm)))));
+		case 1: {
+			SimpleMatrix delta_mu = Maths.getColMean(b).minus(Maths.getColMean(a));
+			SimpleMatrix sigma_a = diagonalCovariance(a);
+			SimpleMatrix sigma_b = diagonalCovariance(b);
+			double first_term = 0.5 * (delta_mu.transpose().mult(sigma_a.invert().plus(sigma_b.invert())).mult(delta_mu)).get(0,0);
+			double second_term = 0.5 * sigma_a.invert().mult(sigma_b).plus(sigma_b.invert().mult(sigma_a)).minus(SimpleMatrix.identity(sigma_a.numCols())).trace();
+			return ((first_term + second_term) / 100000);
+		}
+		default: {
+			SimpleMatrix delta_mu = Maths.getColMean(a).minus(Maths.getColMean(b));
+			SimpleMatrix sigma_a = diagonalCovariance(a);
+			SimpleMatrix sigma_b = diagonalCovariance(b);
+			double first_term = 0.25 * (delta_mu.transpose().mult((sigma_a.plus(sigma_b)).invert()).mult(delta_mu)).get(0,0);
+			double second_term = 0.5 * Math.log((sigma_a.plus(sigma_b)).determinant() / (2 * Math.sqrt((sigma_a.mult(sigma_b)).determinant())));
+			return (first_term + second_term);
+		}
+		}
+	}
+
+	private static double[][] toArray(SimpleMatrix mat) {
+		double[][] dat = new double[mat.numRows()][mat.numCols()];
+		for (int i = 0; i < mat.numRows(); i++) {
+			for (int j = 0; j < mat.numCols(); j++) {
+				dat[i][j] = mat.get(i,j);
+			}
+		}
+		return dat;
+	}
+
+	private static SimpleMatrix diagonalCovariance(SimpleMatrix dat) {
+		int p = dat.numCols();
+		double[] sigma = new double[p];
+		for (int i = 0; i < p; i++) {
+			SimpleMatrix temp_vec = dat.extractVector(false, i);
+			List<Double> temp_list = new ArrayList<Double>();
+			for (int j = 0; j < temp_vec.numRows(); j++) {
+				temp_list.add(temp_vec.get(j));
+			}
+			sigma[i] = Math.sqrt(Maths.getVariance(temp_list));
+		}
+		return SimpleMatrix.diag(sigma);
+	}
+
+}
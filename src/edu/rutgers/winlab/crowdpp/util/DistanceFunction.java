@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.util;
+
+/**
+ * The DistanceFunction interface
+ * A distance between two sets of MFCC frames, computed from their column means and
+ * column standard deviations (the diagonal of Maths.getDiagonalCovariance).
+ */
+public interface DistanceFunction {
+
+	/**
+	 * @param mean_a the column mean of a
+	 * @param sigma_a the column standard deviation of a, not used by every distance
+	 * @param mean_b the column mean of b
+	 * @param sigma_b the column standard deviation of b, not used by every distance
+	 * @return the distance
+	 */
+	double getDistance(double[] mean_a, double[] sigma_a, double[] mean_b, double[] sigma_b);
+
+	/** @return true if the distance uses the standard deviations */
+	boolean usesSigma();
+
+}
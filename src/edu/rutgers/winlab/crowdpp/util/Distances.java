@@ -36,22 +36,56 @@ import org.ejml.simple.SimpleMatrix;
  */
 public class Distances {
 	
-	/** @return the cosine distance */
-	public static double Cosine(SimpleMatrix a, SimpleMatrix b) {
-		double [][]a_norm = new double[a.numRows()][a.numCols()];
-		for(int i = 0; i < a.numRows(); i++) {
-			for(int j = 0; j < a.numCols(); j++) {
-				a_norm[i][j] = a.get(i,j);
-			}
+	/** the cosine distance of the means in degrees */
+	public static final DistanceFunction COSINE = new DistanceFunction() {
+		public double getDistance(double[] mean_a, double[] sigma_a, double[] mean_b, double[] sigma_b) {
+			return Cosine(mean_a, mean_b);
 		}
-		double [][]b_norm = new double[b.numRows()][b.numCols()];
-		for(int i = 0; i < b.numRows(); i++) {
-			for(int j = 0; j < b.numCols(); j++) {
-				b_norm[i][j] = b.get(i,j);
-			}
+		public boolean usesSigma() {
+			return false;
 		}
-		double deg = Math.toDegrees(Math.acos(Maths.dotProduct(Maths.getColMean(a_norm), Maths.getColMean(b_norm)) / (Maths.getNorm2(Maths.getColMean(a_norm)) * Maths.getNorm2(Maths.getColMean(b_norm)))));
-		return deg;
+	};
+
+	/** the symmetric KullbackLeibler distance of the diagonal gaussians */
+	public static final DistanceFunction KULLBACK_LEIBLER = new DistanceFunction() {
+		public double getDistance(double[] mean_a, double[] sigma_a, double[] mean_b, double[] sigma_b) {
+			return KullbackLeibler(mean_a, sigma_a, mean_b, sigma_b);
+		}
+		public boolean usesSigma() {
+			return true;
+		}
+	};
+
+	/** the Bhattacharyya distance of the diagonal gaussians */
+	public static final DistanceFunction BHATTACHARYYA = new DistanceFunction() {
+		public double getDistance(double[] mean_a, double[] sigma_a, double[] mean_b, double[] sigma_b) {
+			return Bhattacharyya(mean_a, sigma_a, mean_b, sigma_b);
+		}
+		public boolean usesSigma() {
+			return true;
+		}
+	};
+
+	/** @return the distance of the two matrices (one row per frame) */
+	public static double getDistance(DistanceFunction f, SimpleMatrix a, SimpleMatrix b) {
+		double[] mean_a = Maths.getColMean(a, new double[a.numCols()]);
+		double[] mean_b = Maths.getColMean(b, new double[b.numCols()]);
+		double[] sigma_a = null, sigma_b = null;
+		if (f.usesSigma()) {
+			sigma_a = Maths.getColStd(a, mean_a, new double[a.numCols()]);
+			sigma_b = Maths.getColStd(b, mean_b, new double[b.numCols()]);
+		}
+		return f.getDistance(mean_a, sigma_a, mean_b, sigma_b);
+	}
+
+	/** @return the cosine distance */
+	public static double Cosine(SimpleMatrix a, SimpleMatrix b) {
+		return getDistance(COSINE, a, b);
+	}
+	
+	/** @return the cosine distance of two column means */
+	public static double Cosine(double[] mean_a, double[] mean_b) {
+		return Math.toDegrees(Math.acos(Maths.dotProduct(mean_a, mean_b) / (Maths.getNorm2(mean_a) * Maths.getNorm2(mean_b))));
 	}
 	
 	/** @return the normalized cosine distance */
@@ -96,24 +130,41 @@ public class Distances {
 	
 	/** @return the KullbackLeibler distance */
 	public static double KullbackLeibler(SimpleMatrix a, SimpleMatrix b) {
+		return getDistance(KULLBACK_LEIBLER, a, b);
+	}
+
+	/** @return the KullbackLeibler distance of two diagonal gaussians */
+	public static double KullbackLeibler(double[] mean_a, double[] sigma_a, double[] mean_b, double[] sigma_b) {
 		// formula: 0.5 * t(mu_y - mu_x) * (inv(sigma_x) + inv(sigma_y)) * (mu_y - mu_x) + 0.5 tr(inv(sigma_x) * sigma_y + inv(sigma_y) * sigma_x - 2I)
-		SimpleMatrix delta_mu = Maths.getColMean(b).minus(Maths.getColMean(a));
-		SimpleMatrix sigma_a = Maths.getDiagonalCovariance(a);
-		SimpleMatrix sigma_b = Maths.getDiagonalCovariance(b);
-		double first_term = 0.5 * (delta_mu.transpose().mult(sigma_a.invert().plus(sigma_b.invert())).mult(delta_mu)).get(0,0);
-		double second_term = 0.5 * sigma_a.invert().mult(sigma_b).plus(sigma_b.invert().mult(sigma_a)).minus(SimpleMatrix.identity(sigma_a.numCols())).trace();
-		return ((first_term + second_term) / 100000);
+		// with diagonal sigmas both terms are sums over the dimensions
+		double first_term = 0;
+		double second_term = 0;
+		for (int i = 0; i < mean_a.length; i++) {
+			double delta_mu = mean_b[i] - mean_a[i];
+			first_term += delta_mu * delta_mu * (1 / sigma_a[i] + 1 / sigma_b[i]);
+			second_term += sigma_b[i] / sigma_a[i] + sigma_a[i] / sigma_b[i] - 1;
+		}
+		return ((0.5 * first_term + 0.5 * second_term) / 100000);
 	}
 
 	/** @return the Bhattacharyya distance */
 	public static double Bhattacharyya(SimpleMatrix a, SimpleMatrix b) {
-		// formula: 0.25 * t(mu_y - mu_x) * (sigma_x + sigma_y) * (mu_y - mu_x) + 0.5 * log(det(sigma_a + sigma_b) / (2 * sqrt(det(sigma_a * sigma_b)))
-		SimpleMatrix delta_mu = Maths.getColMean(a).minus(Maths.getColMean(b));
-		SimpleMatrix sigma_a = Maths.getDiagonalCovariance(a);
-		SimpleMatrix sigma_b = Maths.getDiagonalCovariance(b);
-		double first_term = 0.25 * (delta_mu.transpose().mult((sigma_a.plus(sigma_b)).invert()).mult(delta_mu)).get(0,0);
-		double second_term = 0.5 * Math.log((sigma_a.plus(sigma_b)).determinant() / (2 * Math.sqrt((sigma_a.mult(sigma_b)).determinant())));
-		return (first_term + second_term);
+		return getDistance(BHATTACHARYYA, a, b);
+	}
+
+	/** @return the Bhattacharyya distance of two diagonal gaussians */
+	public static double Bhattacharyya(double[] mean_a, double[] sigma_a, double[] mean_b, double[] sigma_b) {
+		// formula: 0.25 * t(mu_y - mu_x) * inv(sigma_x + sigma_y) * (mu_y - mu_x) + 0.5 * log(det(sigma_a + sigma_b) / (2 * sqrt(det(sigma_a * sigma_b)))
+		// the determinants are taken as sums of logs, which does not underflow for small sigmas
+		double first_term = 0;
+		double log_det = 0;
+		for (int i = 0; i < mean_a.length; i++) {
+			double delta_mu = mean_a[i] - mean_b[i];
+			double sigma = sigma_a[i] + sigma_b[i];
+			first_term += delta_mu * delta_mu / sigma;
+			log_det += Math.log(sigma) - 0.5 * Math.log(sigma_a[i] * sigma_b[i]);
+		}
+		return (0.25 * first_term + 0.5 * (log_det - Math.log(2)));
 	}
 	
 }
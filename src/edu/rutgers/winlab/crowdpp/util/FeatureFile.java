@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.util;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The FeatureFile class
+ * Binary container holding the MFCC and pitch features of one recording.
+ * All values are little endian; the header is
+ * <pre>
+ * int   magic ("CPFF")
+ * int   version
+ * float frame rate (frames per second)
+ * int   mfcc frame count
+ * int   mfcc dimension
+ * int   pitch frame count
+ * int   pitch dimension
+ * </pre>
+ * followed by the mfcc frames and the pitch frames as float32, frame by frame.
+ */
+public class FeatureFile {
+
+	/** "CPFF" read as little endian int */
+	public static final int MAGIC = 0x46465043;
+
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 28;
+
+	/** appended to the wav file path, like the legacy text files */
+	public static final String EXTENSION = ".features.bin";
+
+	public static final String MFCC_TXT = ".jstk.mfcc.txt";
+	public static final String PITCH_TXT = ".YIN.pitch.txt";
+
+	/** 16ms frame shift */
+	public static final float DEFAULT_FRAME_RATE = 62.5f;
+
+	private FeatureFile() {}
+
+	/** @return the feature file belonging to the wav file */
+	public static String getPath(String wavFile) {
+		return wavFile + EXTENSION;
+	}
+
+	/** convert the legacy text features of the wav file into the binary feature file */
+	public static String convert(String wavFile) throws IOException {
+		String out = getPath(wavFile);
+		convert(wavFile + MFCC_TXT, wavFile + PITCH_TXT, out);
+		return out;
+	}
+
+	/** convert the legacy mfcc and pitch text files into a binary feature file */
+	public static void convert(String mfccFile, String pitchFile, String outFile) throws IOException {
+		double[][] mfcc = FileProcess.readFile(mfccFile);
+		double[][] pitch = FileProcess.readFile(pitchFile);
+		FeatureFileWriter.write(outFile, DEFAULT_FRAME_RATE, mfcc, pitch);
+	}
+
+	/**
+	 * Open the features of the wav file, the legacy text files are converted first if there is no binary file yet.
+	 * @return the reader, or null if there are no features
+	 */
+	public static FeatureFileReader open(String wavFile) throws IOException {
+		File bin = new File(getPath(wavFile));
+		if (!bin.exists()) {
+			if (!new File(wavFile + MFCC_TXT).exists() || !new File(wavFile + PITCH_TXT).exists()) {
+				return null;
+			}
+			convert(wavFile);
+		}
+		return new FeatureFileReader(bin.getPath());
+	}
+
+	/** delete the binary and the legacy feature files of the wav file */
+	public static void delete(String wavFile) {
+		FileProcess.deleteFile(getPath(wavFile));
+		FileProcess.deleteFile(wavFile + MFCC_TXT);
+		FileProcess.deleteFile(wavFile + PITCH_TXT);
+	}
+
+	/** convert the legacy text features of the given wav files */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("usage: FeatureFile wav-file [wav-file ...]\n"
+					+ "  converts <wav-file>" + MFCC_TXT + " and <wav-file>" + PITCH_TXT + " into <wav-file>" + EXTENSION);
+			System.exit(1);
+		}
+		for (String wavFile : args) {
+			System.out.println(convert(wavFile));
+		}
+	}
+
+}
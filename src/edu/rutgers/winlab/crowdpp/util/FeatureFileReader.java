@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.util;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * The FeatureFileReader class
+ * Reads the MFCC and pitch features from a binary feature file, see FeatureFile for the layout.
+ */
+public class FeatureFileReader {
+
+	private final int version;
+	private final float frameRate;
+	private final double[][] mfcc;
+	private final double[][] pitch;
+
+	/** read the header and the frames of the file */
+	public FeatureFileReader(String filename) throws IOException {
+		FileInputStream fis = new FileInputStream(filename);
+		try {
+			FileChannel channel = fis.getChannel();
+			long size = channel.size();
+			if (size < FeatureFile.HEADER_SIZE || size > Integer.MAX_VALUE) {
+				throw new IOException(filename + " is not a feature file");
+			}
+			ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+			while (buf.hasRemaining()) {
+				if (channel.read(buf) < 0) {
+					throw new IOException("Unexpected end of " + filename);
+				}
+			}
+			buf.flip();
+
+			if (buf.getInt() != FeatureFile.MAGIC) {
+				throw new IOException(filename + " is not a feature file");
+			}
+			version = buf.getInt();
+			if (version < 1 || version > FeatureFile.VERSION) {
+				throw new IOException("Unsupported feature file version " + version);
+			}
+			frameRate = buf.getFloat();
+			int mfccFrames = buf.getInt();
+			int mfccDim = buf.getInt();
+			int pitchFrames = buf.getInt();
+			int pitchDim = buf.getInt();
+			if (mfccFrames < 0 || mfccDim < 0 || pitchFrames < 0 || pitchDim < 0
+					|| 4L * ((long) mfccFrames * mfccDim + (long) pitchFrames * pitchDim) != size - FeatureFile.HEADER_SIZE) {
+				throw new IOException("Corrupted feature file " + filename);
+			}
+			mfcc = getFrames(buf, mfccFrames, mfccDim);
+			pitch = getFrames(buf, pitchFrames, pitchDim);
+		} finally {
+			fis.close();
+		}
+	}
+
+	private static double[][] getFrames(ByteBuffer buf, int frames, int dim) {
+		double[][] dat = new double[frames][dim];
+		for (int i = 0; i < frames; i++) {
+			for (int j = 0; j < dim; j++) {
+				dat[i][j] = buf.getFloat();
+			}
+		}
+		return dat;
+	}
+
+	/** @return the format version of the file */
+	public int getVersion() {
+		return version;
+	}
+
+	/** @return the number of frames per second */
+	public float getFrameRate() {
+		return frameRate;
+	}
+
+	/** @return the MFCC features, one row per frame */
+	public double[][] getMfcc() {
+		return mfcc;
+	}
+
+	/** @return the pitch features, one row per frame */
+	public double[][] getPitch() {
+		return pitch;
+	}
+
+}
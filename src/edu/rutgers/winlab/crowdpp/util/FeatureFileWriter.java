@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.util;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * The FeatureFileWriter class
+ * Writes the MFCC and pitch features into a binary feature file, see FeatureFile for the layout.
+ */
+public class FeatureFileWriter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private FeatureFileWriter() {}
+
+	/** write the mfcc and pitch matrices (one row per frame) into the file */
+	public static void write(String filename, float frameRate, double[][] mfcc, double[][] pitch) throws IOException {
+		int mfccDim = mfcc.length > 0 ? mfcc[0].length : 0;
+		int pitchDim = pitch.length > 0 ? pitch[0].length : 0;
+
+		FileOutputStream fos = new FileOutputStream(filename);
+		FileChannel channel = fos.getChannel();
+		try {
+			ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			buf.putInt(FeatureFile.MAGIC);
+			buf.putInt(FeatureFile.VERSION);
+			buf.putFloat(frameRate);
+			buf.putInt(mfcc.length);
+			buf.putInt(mfccDim);
+			buf.putInt(pitch.length);
+			buf.putInt(pitchDim);
+			putFrames(channel, buf, mfcc, mfccDim);
+			putFrames(channel, buf, pitch, pitchDim);
+			buf.flip();
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+		} finally {
+			fos.close();
+		}
+	}
+
+	/** append the frames as float32, writing the buffer out whenever it is full */
+	private static void putFrames(FileChannel channel, ByteBuffer buf, double[][] frames, int dim) throws IOException {
+		for (int i = 0; i < frames.length; i++) {
+			if (frames[i].length != dim) {
+				throw new IOException("Frame " + i + " has " + frames[i].length + " values instead of " + dim);
+			}
+			for (int j = 0; j < dim; j++) {
+				if (buf.remaining() < 4) {
+					buf.flip();
+					while (buf.hasRemaining()) {
+						channel.write(buf);
+					}
+					buf.clear();
+				}
+				buf.putFloat((float) frames[i][j]);
+			}
+		}
+	}
+
+}
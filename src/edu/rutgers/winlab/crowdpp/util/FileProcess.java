@@ -22,15 +22,13 @@
 
 package edu.rutgers.winlab.crowdpp.util;
 
-import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.StringTokenizer;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
@@ -52,9 +50,18 @@ public class FileProcess {
 	  return fileName;
 	}
 
-	/** @return the SD card path */
+	/** @return the SD card path, or the working directory outside of Android */
 	public static String getSdPath() {
-		return  Environment.getExternalStorageDirectory().getPath();
+		try {
+			return Environment.getExternalStorageDirectory().getPath();
+		}
+		catch (LinkageError e) {
+			// no Android runtime, e.g. the batch runner
+			return System.getProperty("user.dir");
+		}
+		catch (RuntimeException e) {
+			return System.getProperty("user.dir");
+		}
 	}
 	
 	/** delete the file */
@@ -97,40 +104,17 @@ public class FileProcess {
 	
 	/** read the file into a matrix */
 	public static double[][] readFile(String filename) throws IOException {
-		BufferedReader br = new BufferedReader (new FileReader (filename));
-		String s1, s2;
-		int rows = 0;
-		int cols = 0;
-		if ((s1 = br.readLine()) != null) {
-			++rows;
-			StringTokenizer st = new StringTokenizer (s1);
-			while (st.hasMoreTokens())
-			{
-				s2 = st.nextToken();
-			    ++cols;
-			}
-		}
-		while ((s1 = br.readLine()) != null) {
-			++rows;
-		}
-	  br.close();
-		
-	  double [][] dat = new double [rows][cols];
-	  br = new BufferedReader (new FileReader (filename));
-
-	  int i = 0;
-		int j = 0;
-		while ((s1 = br.readLine()) != null) {
-			StringTokenizer st = new StringTokenizer (s1);
-			j = 0;
-			while (st.hasMoreTokens()) {
-			  s2 = st.nextToken();
-			  dat[i][j] = Double.valueOf(s2);	 
-			  j++;
-			} 
-			i++;
+		return readFile(filename, Integer.MAX_VALUE);
+	}
+	
+	/** read the first maxCols columns of the file into a matrix in a single pass */
+	public static double[][] readFile(String filename, int maxCols) throws IOException {
+		FileInputStream fis = new FileInputStream(filename);
+		try {
+			return new MatrixParser(fis.getChannel(), maxCols).parse();
+		} finally {
+			fis.close();
 		}
-		return dat;
 	}
 	
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package edu.rutgers.winlab.crowdpp.util;
+
+/**
+ * The Histogram class
+ * Fixed width bins over [min, max) with an underflow and an overflow count, so a stream of
+ * values of any length is summarized in constant memory.
+ */
+public class Histogram {
+
+	private final double min, max, binWidth;
+	private final long[] counts;
+	private long underflow, overflow, total;
+
+	public Histogram(double min, double max, double binWidth) {
+		if (!(max > min) || !(binWidth > 0)) {
+			throw new IllegalArgumentException("Invalid histogram range [" + min + ", " + max + ") with bin width " + binWidth);
+		}
+		this.min = min;
+		this.max = max;
+		this.binWidth = binWidth;
+		this.counts = new long[(int) Math.ceil((max - min) / binWidth)];
+	}
+
+	/** count the value, NaN is ignored */
+	public void add(double value) {
+		if (value < min) {
+			underflow++;
+		}
+		else if (value >= max) {
+			overflow++;
+		}
+		else if (value >= min) {
+			int i = (int) ((value - min) / binWidth);
+			counts[i < counts.length ? i : counts.length - 1]++;
+		}
+		else {
+			return;
+		}
+		total++;
+	}
+
+	/** add the counts of a histogram with the same bins */
+	public void merge(Histogram h) {
+		if (h.min != min || h.max != max || h.binWidth != binWidth) {
+			throw new IllegalArgumentException("Cannot merge histograms with different bins");
+		}
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += h.counts[i];
+		}
+		underflow += h.underflow;
+		overflow += h.overflow;
+		total += h.total;
+	}
+
+	public int getBinCount() {
+		return counts.length;
+	}
+
+	/** @return the lower edge of the bin, the upper edge is the lower edge of bin + 1 */
+	public double getBinEdge(int bin) {
+		return bin < counts.length ? min + bin * binWidth : max;
+	}
+
+	public long getCount(int bin) {
+		return counts[bin];
+	}
+
+	public long getUnderflow() {
+		return underflow;
+	}
+
+	public long getOverflow() {
+		return overflow;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return the largest bin edge t with at most the given fraction of the values below t,
+	 * min if even the underflow is too large, NaN if the histogram is empty
+	 */
+	public double getLowerEdge(double fraction) {
+		if (total == 0) {
+			return Double.NaN;
+		}
+		long limit = (long) Math.floor(fraction * total);
+		long cum = underflow;
+		if (cum > limit) {
+			return min;
+		}
+		for (int i = 0; i < counts.length; i++) {
+			cum += counts[i];
+			if (cum > limit) {
+				return getBinEdge(i);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return the smallest bin edge t with at most the given fraction of the values at or above t,
+	 * max if even the overflow is too large, NaN if the histogram is empty
+	 */
+	public double getUpperEdge(double fraction) {
+		if (total == 0) {
+			return Double.NaN;
+		}
+		long limit = (long) Math.floor(fraction * total);
+		long cum = overflow;
+		if (cum > limit) {
+			return max;
+		}
+		for (int i = counts.length - 1; i >= 0; i--) {
+			cum += counts[i];
+			if (cum > limit) {
+				return getBinEdge(i + 1);
+			}
+		}
+		return min;
+	}
+
+	/** @return the fraction of the values below the bin edge t, the overflow is never below */
+	public double getFractionBelow(double t) {
+		if (total == 0) {
+			return Double.NaN;
+		}
+		long cum = underflow;
+		for (int i = 0; i < counts.length && getBinEdge(i + 1) <= t; i++) {
+			cum += counts[i];
+		}
+		return (double) cum / total;
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package edu.rutgers.winlab.crowdpp.util;
+
+/**
+ * The Log class
+ * Forwards to android.util.Log on the phone and prints to the console on a plain JVM,
+ * so the speaker counting code can also run headless.
+ */
+public class Log {
+
+	private static final boolean ANDROID = "Dalvik".equals(System.getProperty("java.vm.name"));
+
+	/** print the info messages on a plain JVM */
+	public static boolean verbose = false;
+
+	private Log() {}
+
+	public static void i(String tag, String msg) {
+		if (ANDROID) {
+			android.util.Log.i(tag, msg);
+		}
+		else if (verbose) {
+			System.out.println(tag + ": " + msg);
+		}
+	}
+
+	public static void w(String tag, String msg) {
+		if (ANDROID) {
+			android.util.Log.w(tag, msg);
+		}
+		else {
+			System.err.println(tag + ": " + msg);
+		}
+	}
+
+	public static void e(String tag, String msg) {
+		if (ANDROID) {
+			android.util.Log.e(tag, msg);
+		}
+		else {
+			System.err.println(tag + ": " + msg);
+		}
+	}
+
+}
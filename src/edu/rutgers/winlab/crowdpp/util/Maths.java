@@ -22,7 +22,6 @@
 
 package edu.rutgers.winlab.crowdpp.util;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -136,18 +135,41 @@ public class Maths {
 		return (variance/array.length);
 	}
 
-	/** @return the diagonal covariance */
-	public static SimpleMatrix getDiagonalCovariance(SimpleMatrix dat) {
-		int p = dat.numCols();
-		double []sigma = new double[p]; 
-		for(int i = 0; i < p; i++) {
-			SimpleMatrix temp_vec = dat.extractVector(false, i);
-			List<Double> temp_list = new ArrayList<Double>();
-			for(int j = 0; j < temp_vec.numRows(); j++) {
-				temp_list.add(temp_vec.get(j));
+	/** @return the column mean, written into mean (one entry per column) */
+	public static double[] getColMean(SimpleMatrix dat, double[] mean) {
+		int cols = dat.numCols();
+		int rows = dat.numRows();
+		double[] data = dat.getMatrix().data;
+		for (int i = 0; i < cols; i++) {
+			double sum = 0;
+			for (int j = 0; j < rows; j++) {
+				sum = sum + data[j * cols + i];
+			}
+			mean[i] = sum / rows;
+		}
+		return mean;
+	}
+
+	/** @return the column standard deviation around the given column mean, written into sigma */
+	public static double[] getColStd(SimpleMatrix dat, double[] mean, double[] sigma) {
+		int cols = dat.numCols();
+		int rows = dat.numRows();
+		double[] data = dat.getMatrix().data;
+		for (int i = 0; i < cols; i++) {
+			double variance = 0;
+			for (int j = 0; j < rows; j++) {
+				double d = data[j * cols + i] - mean[i];
+				variance = variance + d * d;
 			}
-			sigma[i] = Math.sqrt(getVariance(temp_list));
+			sigma[i] = Math.sqrt(variance / rows);
 		}
+		return sigma;
+	}
+
+	/** @return the diagonal covariance (the column standard deviations on the diagonal) */
+	public static SimpleMatrix getDiagonalCovariance(SimpleMatrix dat) {
+		int p = dat.numCols();
+		double[] sigma = getColStd(dat, getColMean(dat, new double[p]), new double[p]);
 		SimpleMatrix sigma_mat = SimpleMatrix.diag(sigma);
 		return sigma_mat;
 	}
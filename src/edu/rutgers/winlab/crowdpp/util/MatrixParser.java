@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * The MatrixParser class
+ * Single pass parser for whitespace separated ASCII matrices, as written by the feature extraction.
+ * Lines and tokens are split like BufferedReader.readLine and StringTokenizer, the number of
+ * columns is given by the first line. Plain decimal numbers with up to 15 significant digits are
+ * converted without creating Strings, anything else goes through Double.parseDouble, so the values
+ * are identical to Double.valueOf. The matrix is either parsed at once or row by row.
+ */
+class MatrixParser {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	/** 2^53, larger mantissas may not be exact in a double */
+	private static final long MAX_EXACT = 1L << 53;
+
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++) {
+			POW10[i] = POW10[i-1] * 10;
+		}
+	}
+
+	private final ReadableByteChannel channel;
+	private final int maxCols;
+
+	/** the bytes read, valid from 0 to limit */
+	private byte[] buf = new byte[BUFFER_SIZE];
+	private int pos = 0;
+	private int limit = 0;
+	private boolean eof = false;
+
+	/** the parsed values, row by row with cols values per row */
+	private double[] data = new double[4096];
+	private int size = 0;
+	private int rows = 0;
+	private int cols = -1;
+
+	/** column of the next token in the current line */
+	private int col = 0;
+
+	/** a CR was the last line end read by nextRow, a following LF belongs to it */
+	private boolean skipLF = false;
+
+	MatrixParser(ReadableByteChannel channel, int maxCols) {
+		this.channel = channel;
+		this.maxCols = maxCols;
+	}
+
+	/** @return the matrix, one row per line */
+	double[][] parse() throws IOException {
+		boolean lineStarted = false;
+		boolean skipLF = false;
+		while (pos < limit || fill(pos)) {
+			byte b = buf[pos];
+			if (b == '\n') {
+				pos++;
+				if (skipLF) {
+					skipLF = false;
+				}
+				else {
+					endLine();
+					lineStarted = false;
+				}
+			}
+			else if (b == '\r') {
+				pos++;
+				endLine();
+				lineStarted = false;
+				skipLF = true;
+			}
+			else {
+				skipLF = false;
+				lineStarted = true;
+				if (b == ' ' || b == '\t' || b == '\f') {
+					pos++;
+				}
+				else {
+					token();
+				}
+			}
+		}
+		if (lineStarted) {
+			endLine();
+		}
+
+		if (cols < 0) {
+			cols = 0;
+		}
+		double[][] dat = new double[rows][cols];
+		for (int i = 0; i < rows; i++) {
+			System.arraycopy(data, i * cols, dat[i], 0, cols);
+		}
+		return dat;
+	}
+
+	/**
+	 * Parse the next line into the row, missing values are left at 0.
+	 * @return false at the end of the file
+	 */
+	boolean nextRow(double[] row) throws IOException {
+		size = 0;
+		boolean lineStarted = false;
+		while (pos < limit || fill(pos)) {
+			byte b = buf[pos];
+			if (b == '\n' || b == '\r') {
+				pos++;
+				if (b == '\n' && skipLF) {
+					skipLF = false;
+					continue;
+				}
+				skipLF = b == '\r';
+				endLine();
+				return copyRow(row);
+			}
+			skipLF = false;
+			lineStarted = true;
+			if (b == ' ' || b == '\t' || b == '\f') {
+				pos++;
+			}
+			else {
+				token();
+			}
+		}
+		if (lineStarted) {
+			endLine();
+			return copyRow(row);
+		}
+		return false;
+	}
+
+	private boolean copyRow(double[] row) {
+		int n = Math.min(size, row.length);
+		System.arraycopy(data, 0, row, 0, n);
+		for (int i = n; i < row.length; i++) {
+			row[i] = 0;
+		}
+		return true;
+	}
+
+	/**
+	 * Move the bytes from keep on to the front of the buffer and read more.
+	 * @return false at the end of the file
+	 */
+	private boolean fill(int keep) throws IOException {
+		if (eof) {
+			return false;
+		}
+		if (keep == 0 && limit == buf.length) {
+			// a single token fills the buffer
+			byte[] grown = new byte[buf.length * 2];
+			System.arraycopy(buf, 0, grown, 0, limit);
+			buf = grown;
+		}
+		System.arraycopy(buf, keep, buf, 0, limit - keep);
+		limit -= keep;
+		pos -= keep;
+		ByteBuffer buffer = ByteBuffer.wrap(buf, limit, buf.length - limit);
+		int n;
+		while ((n = channel.read(buffer)) == 0);
+		if (n < 0) {
+			eof = true;
+			return false;
+		}
+		limit += n;
+		return true;
+	}
+
+	/** scan the token starting at pos and add its value */
+	private void token() throws IOException {
+		int start = pos;
+		while (true) {
+			while (pos < limit) {
+				byte b = buf[pos];
+				if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f') {
+					break;
+				}
+				pos++;
+			}
+			if (pos < limit) {
+				break;
+			}
+			// the token continues in the next block, fill moves pos along with the kept bytes
+			int length = pos - start;
+			boolean more = fill(start);
+			start = pos - length;
+			if (!more) {
+				break;
+			}
+		}
+		if (col < maxCols) {
+			if (cols >= 0 && col >= cols) {
+				throw new IOException("Row " + rows + " has more than " + cols + " columns");
+			}
+			add(parseDouble(buf, start, pos));
+		}
+		col++;
+	}
+
+	private void endLine() {
+		if (cols < 0) {
+			// the first line gives the number of columns
+			cols = Math.min(col, maxCols);
+		}
+		else {
+			// missing values are left at 0
+			for (int i = Math.min(col, cols); i < cols; i++) {
+				add(0);
+			}
+		}
+		rows++;
+		col = 0;
+	}
+
+	private void add(double d) {
+		if (size == data.length) {
+			double[] grown = new double[data.length * 2];
+			System.arraycopy(data, 0, grown, 0, size);
+			data = grown;
+		}
+		data[size++] = d;
+	}
+
+	/** parse [sign] digits [. digits] [e [sign] digits] exactly, or fall back to Double.parseDouble */
+	private static double parseDouble(byte[] token, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if (token[i] == '-' || token[i] == '+') {
+			negative = token[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean seenDigit = false;
+		boolean exact = true;
+		for (; i < to; i++) {
+			int c = token[i] - '0';
+			if (c < 0 || c > 9) {
+				break;
+			}
+			seenDigit = true;
+			if ((mantissa != 0 || c != 0) && ++digits > 15) {
+				exact = false;
+			}
+			mantissa = mantissa * 10 + c;
+		}
+		if (i < to && token[i] == '.') {
+			for (i++; i < to; i++) {
+				int c = token[i] - '0';
+				if (c < 0 || c > 9) {
+					break;
+				}
+				seenDigit = true;
+				if ((mantissa != 0 || c != 0) && ++digits > 15) {
+					exact = false;
+					break;
+				}
+				mantissa = mantissa * 10 + c;
+				exponent--;
+			}
+		}
+		if (exact && seenDigit && i < to && (token[i] == 'e' || token[i] == 'E')) {
+			i++;
+			boolean negativeExp = false;
+			if (i < to && (token[i] == '-' || token[i] == '+')) {
+				negativeExp = token[i] == '-';
+				i++;
+			}
+			int exp = 0;
+			int start = i;
+			for (; i < to && exp < 1000; i++) {
+				int c = token[i] - '0';
+				if (c < 0 || c > 9) {
+					break;
+				}
+				exp = exp * 10 + c;
+			}
+			if (i == start) {
+				exact = false;
+			}
+			exponent += negativeExp ? -exp : exp;
+		}
+		if (exact && seenDigit && i == to && mantissa < MAX_EXACT && exponent > -POW10.length && exponent < POW10.length) {
+			double d = mantissa;
+			if (exponent > 0) {
+				d *= POW10[exponent];
+			}
+			else if (exponent < 0) {
+				d /= POW10[-exponent];
+			}
+			return negative ? -d : d;
+		}
+		// more digits, special values or malformed numbers
+		return Double.parseDouble(new String(token, from, to - from, ISO_8859_1));
+	}
+
+}
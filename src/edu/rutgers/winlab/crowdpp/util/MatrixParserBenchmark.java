@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+/**
+ * The MatrixParserBenchmark class
+ * Checks MatrixParser against the original two pass StringTokenizer reader of FileProcess.readFile on
+ * fuzzed files and compares the time and the allocation of both on one large feature file.
+ * Run on a desktop JVM:
+ * <pre>
+ * java edu.rutgers.winlab.crowdpp.util.MatrixParserBenchmark [rows] [cols] [fuzzed files]
+ * </pre>
+ * The allocation is taken from the HotSpot thread MXBean and shown as n/a where it is not available.
+ */
+public class MatrixParserBenchmark {
+
+	/** keeps the timed results alive */
+	private static double sink;
+
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 225000;
+		int cols = args.length > 1 ? Integer.parseInt(args[1]) : 19;
+		int fuzz = args.length > 2 ? Integer.parseInt(args[2]) : 3000;
+
+		Random random = new Random(3);
+		File file = File.createTempFile("matrix", ".txt");
+		file.deleteOnExit();
+		int mismatches = 0;
+		for (int i = 0; i < fuzz; i++) {
+			fuzz(file, random);
+			double[][] expected = reference(file.getPath());
+			if (!same(expected, FileProcess.readFile(file.getPath()), Integer.MAX_VALUE)) {
+				mismatches++;
+			}
+			int maxCols = 1 + random.nextInt(4);
+			if (!same(expected, FileProcess.readFile(file.getPath(), maxCols), maxCols)) {
+				mismatches++;
+			}
+		}
+		System.out.println(fuzz + " fuzzed files, " + mismatches + " results differ from the StringTokenizer reader");
+
+		write(file, rows, cols, random);
+		System.out.println(String.format("%d x %d values, %.1f MB", rows, cols, file.length() / 1e6));
+		System.out.println("reader                 best ms   allocated MB");
+		measure("StringTokenizer", file.getPath(), 0);
+		measure("MatrixParser", file.getPath(), Integer.MAX_VALUE);
+		measure("MatrixParser 12 cols", file.getPath(), 12);
+		file.delete();
+		if (sink == 0) {
+			System.out.println();
+		}
+	}
+
+	/** the original reader: count the rows and the columns of the first line, then parse every token */
+	static double[][] reference(String filename) throws IOException {
+		BufferedReader br = new BufferedReader(new FileReader(filename));
+		String s1;
+		int rows = 0;
+		int cols = 0;
+		if ((s1 = br.readLine()) != null) {
+			++rows;
+			StringTokenizer st = new StringTokenizer(s1);
+			while (st.hasMoreTokens()) {
+				st.nextToken();
+				++cols;
+			}
+		}
+		while ((s1 = br.readLine()) != null) {
+			++rows;
+		}
+		br.close();
+
+		double[][] dat = new double[rows][cols];
+		br = new BufferedReader(new FileReader(filename));
+		int i = 0;
+		while ((s1 = br.readLine()) != null) {
+			StringTokenizer st = new StringTokenizer(s1);
+			int j = 0;
+			while (st.hasMoreTokens()) {
+				dat[i][j] = Double.valueOf(st.nextToken());
+				j++;
+			}
+			i++;
+		}
+		br.close();
+		return dat;
+	}
+
+	/** @return true if the first maxCols columns hold the same bits */
+	private static boolean same(double[][] expected, double[][] actual, int maxCols) {
+		if (expected.length != actual.length) {
+			return false;
+		}
+		for (int i = 0; i < expected.length; i++) {
+			int cols = Math.min(expected[i].length, maxCols);
+			if (actual[i].length != cols) {
+				return false;
+			}
+			for (int j = 0; j < cols; j++) {
+				if (Double.doubleToLongBits(expected[i][j]) != Double.doubleToLongBits(actual[i][j])) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static final String[] SPECIAL = {"NaN", "Infinity", "-Infinity", "0", "-0.0", "1e-320", "4.9E-324", "1.7976931348623157E308"};
+
+	private static final String[] SEPARATORS = {" ", "  ", "\t", " \t"};
+
+	private static final String[] LINE_ENDS = {"\n", "\r\n", "\r"};
+
+	/** a small file with random number formats, separators and line ends, no row longer than the first */
+	private static void fuzz(File file, Random random) throws IOException {
+		int rows = 1 + random.nextInt(6);
+		int cols = 1 + random.nextInt(6);
+		String end = LINE_ENDS[random.nextInt(LINE_ENDS.length)];
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < rows; i++) {
+			// the later rows may be short, they are zero filled
+			int n = i == 0 ? cols : cols - random.nextInt(Math.min(cols, 2));
+			if (random.nextInt(4) == 0) {
+				sb.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+			}
+			for (int j = 0; j < n; j++) {
+				if (j > 0) {
+					sb.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+				}
+				sb.append(number(random));
+			}
+			if (i < rows - 1 || random.nextBoolean()) {
+				sb.append(end);
+			}
+		}
+		Writer w = new FileWriter(file);
+		w.write(sb.toString());
+		w.close();
+	}
+
+	private static String number(Random random) {
+		switch (random.nextInt(7)) {
+		case 0:
+			return SPECIAL[random.nextInt(SPECIAL.length)];
+		case 1:
+			return Integer.toString(random.nextInt());
+		case 2:
+			return Float.toString((float) (random.nextGaussian() * 100));
+		case 3:
+			return Double.toString(random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20));
+		case 4: {
+			// more significant digits than a long holds exactly
+			StringBuilder sb = new StringBuilder(random.nextBoolean() ? "-" : "");
+			int digits = 10 + random.nextInt(15);
+			for (int i = 0; i < digits; i++) {
+				sb.append((char) ('0' + random.nextInt(10)));
+				if (i == 3) {
+					sb.append('.');
+				}
+			}
+			return sb.toString();
+		}
+		case 5:
+			return String.format("%.6e", random.nextGaussian() * 1e5).replace(',', '.');
+		default:
+			return (random.nextBoolean() ? "+" : "") + "." + random.nextInt(1000000);
+		}
+	}
+
+	/** a feature file of gaussian values written like the float MFCC */
+	private static void write(File file, int rows, int cols, Random random) throws IOException {
+		Writer w = new BufferedWriter(new FileWriter(file), 1 << 16);
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				if (j > 0) {
+					w.write(' ');
+				}
+				w.write(Float.toString((float) (random.nextGaussian() * 10)));
+			}
+			w.write('\n');
+		}
+		w.close();
+	}
+
+	/** warm up, then print the best time of five rounds and the allocation of the last one */
+	private static void measure(String name, String filename, int maxCols) throws IOException {
+		long best = Long.MAX_VALUE;
+		long allocated = -1;
+		for (int round = 0; round < 6; round++) {
+			long a0 = allocatedBytes();
+			long t0 = System.nanoTime();
+			double[][] dat = maxCols > 0 ? FileProcess.readFile(filename, maxCols) : reference(filename);
+			long t = System.nanoTime() - t0;
+			long a1 = allocatedBytes();
+			sink += dat[dat.length - 1][0];
+			if (round > 0) {
+				best = Math.min(best, t);
+				allocated = a0 < 0 ? -1 : a1 - a0;
+			}
+		}
+		System.out.println(String.format("%-20s %9d %14s", name, best / 1000000, 
+				allocated < 0 ? "n/a" : String.format("%.0f", allocated / 1e6)));
+	}
+
+	/** @return the bytes allocated by this thread so far, -1 if the JVM does not tell */
+	private static long allocatedBytes() {
+		try {
+			Object bean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+			Method m = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+			return (Long) m.invoke(bean, Thread.currentThread().getId());
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package edu.rutgers.winlab.crowdpp.util;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * The MatrixReader class
+ * Reads a whitespace separated ASCII matrix row by row, so only one row is held in memory.
+ * The values are the same as FileProcess.readFile.
+ */
+public class MatrixReader {
+
+	private final FileInputStream fis;
+	private final MatrixParser parser;
+
+	/** read the first maxCols columns of the file */
+	public MatrixReader(String filename, int maxCols) throws IOException {
+		fis = new FileInputStream(filename);
+		parser = new MatrixParser(fis.getChannel(), maxCols);
+	}
+
+	/**
+	 * Read the next row, the columns missing from the file are set to 0.
+	 * @return false at the end of the file
+	 */
+	public boolean next(double[] row) throws IOException {
+		return parser.nextRow(row);
+	}
+
+	public void close() throws IOException {
+		fis.close();
+	}
+
+}
@@ -40,6 +40,13 @@ public class PhoneStatus {
     }
     return ((float)level / (float)scale) * 100.0f; 
   }
+	
+	/** @return true if the phone is plugged in and charging or full. */
+	public static boolean isCharging(Intent batteryIntent) {
+    int status = batteryIntent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+    int plugged = batteryIntent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+    return plugged != 0 || status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+  }
 	 
 }
 
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2012-2014 Chenren Xu, Sugang Li
+ * Acknowledgments: Yanyong Zhang, Yih-Farn (Robin) Chen, Emiliano Miluzzo, Jun Li
+ * Contact: lendlice@winlab.rutgers.edu
+ *
+ * This file is part of the Crowdpp.
+ *
+ * Crowdpp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Crowdpp is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the Crowdpp. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package edu.rutgers.winlab.crowdpp.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The StagePipeline class
+ * Runs every job through a fixed sequence of stages, each on its own single thread executor with a
+ * bounded queue, so a job can be in one stage while the next job is in an earlier one. A stage hands
+ * the job on to the next stage and waits while that queue is full; a new job is refused instead
+ * if the queue of the first stage is full. The jobs of one pipeline are processed in order.
+ * A listener learns when a job leaves the pipeline, done or dropped.
+ */
+public class StagePipeline<T> {
+
+	private static final String TAG = "StagePipeline";
+
+	/** one step of the processing of a job, run on the thread of its stage */
+	public interface Stage<T> {
+		/** @return false to drop the job instead of handing it on */
+		boolean process(T job) throws Exception;
+	}
+
+	/** told on the thread of the last stage of a job, the jobs dropped by shutdownNow are not reported */
+	public interface Listener<T> {
+		/** @param completed true if the job went through all the stages */
+		void onDone(T job, boolean completed);
+	}
+
+	private final String name;
+	private final List<String> names = new ArrayList<String>();
+	private final List<Stage<T>> stages = new ArrayList<Stage<T>>();
+	private final List<ThreadPoolExecutor> executors = new ArrayList<ThreadPoolExecutor>();
+	private volatile Listener<T> listener;
+
+	public StagePipeline(String name) {
+		this.name = name;
+	}
+
+	/** append a stage whose queue holds at most capacity jobs, before the first job is submitted */
+	public synchronized StagePipeline<T> addStage(final String stageName, int capacity, Stage<T> stage) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<Runnable>(capacity), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						return new Thread(r, name + "-" + stageName);
+					}
+				}, new RejectedExecutionHandler() {
+					public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+						// the previous stage waits for room instead of dropping the job
+						if (executor.isShutdown()) {
+							throw new RejectedExecutionException(stageName + " is shut down");
+						}
+						try {
+							executor.getQueue().put(r);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new RejectedExecutionException(e);
+						}
+					}
+				});
+		// the queued jobs are only taken by a running thread
+		executor.prestartAllCoreThreads();
+		names.add(stageName);
+		stages.add(stage);
+		executors.add(executor);
+		return this;
+	}
+
+	/** null for none */
+	public void setListener(Listener<T> listener) {
+		this.listener = listener;
+	}
+
+	/** @return false if the job is refused because the first stage is full or the pipeline is shut down */
+	public synchronized boolean submit(T job) {
+		ThreadPoolExecutor first = executors.get(0);
+		if (first.isShutdown() || first.getQueue().remainingCapacity() == 0) {
+			return false;
+		}
+		execute(0, job);
+		return true;
+	}
+
+	private void execute(final int i, final T job) {
+		executors.get(i).execute(new Runnable() {
+			public void run() {
+				boolean next;
+				try {
+					next = stages.get(i).process(job);
+				} catch (Exception e) {
+					Log.e(TAG, name + " " + names.get(i) + " failed: " + e);
+					e.printStackTrace();
+					next = false;
+				}
+				if (next && i + 1 < stages.size()) {
+					try {
+						execute(i + 1, job);
+						return;
+					} catch (RejectedExecutionException e) {
+						Log.w(TAG, name + " dropped a job before " + names.get(i + 1));
+						next = false;
+					}
+				}
+				Listener<T> l = listener;
+				if (l != null) {
+					l.onDone(job, next);
+				}
+			}
+		});
+	}
+
+	/** @return the number of jobs waiting in the queue of every stage, not counting the one in progress */
+	public int[] getQueueDepths() {
+		int[] depths = new int[executors.size()];
+		for (int i = 0; i < depths.length; i++) {
+			depths[i] = executors.get(i).getQueue().size();
+		}
+		return depths;
+	}
+
+	/** @return the number of jobs waiting in the queue of the stage */
+	public int getQueueDepth(String stageName) {
+		return executors.get(names.indexOf(stageName)).getQueue().size();
+	}
+
+	/** @return the number of jobs submitted and not finished yet */
+	public int getPending() {
+		int pending = 0;
+		for (ThreadPoolExecutor executor : executors) {
+			pending += executor.getQueue().size() + executor.getActiveCount();
+		}
+		return pending;
+	}
+
+	/** 
+	 * refuse new jobs, drop the queued ones and wait up to timeoutMs for the jobs in progress
+	 * @return true if every stage terminated in time, false if a job may still be running
+	 */
+	public boolean shutdownNow(long timeoutMs) {
+		for (ThreadPoolExecutor executor : executors) {
+			executor.shutdownNow();
+		}
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		boolean terminated = true;
+		try {
+			for (ThreadPoolExecutor executor : executors) {
+				terminated &= executor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return terminated;
+	}
+
+	/** the queue depth of every stage, e.g. "count: extract 0 count 1 persist 0" */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(name).append(':');
+		int[] depths = getQueueDepths();
+		for (int i = 0; i < depths.length; i++) {
+			sb.append(' ').append(names.get(i)).append(' ').append(depths[i]);
+		}
+		return sb.toString();
+	}
+
+}